@@ -0,0 +1,56 @@
+package bn.blaszczyk.rosecommon.benchmark;
+
+import static bn.blaszczyk.rosecommon.tools.Preference.Type.*;
+
+import bn.blaszczyk.rosecommon.tools.Preference;
+
+public enum BenchmarkPreference implements Preference {
+
+	ROSE_FILE(STRING,"rosefile",""),
+	PERSISTENCE_UNIT(STRING,"persistenceunit","rosePersistenceUnit"),
+	BENCHMARK_URL(STRING,"benchmarkurl","jdbc:h2:mem:rosebenchmark;DB_CLOSE_DELAY=-1"),
+
+	SCALE(INT,"scale",1000),
+	FAN_OUT(INT,"fanout",5),
+	OPERATIONS(INT,"operations",1000),
+	WARMUP_ROUNDS(INT,"warmuprounds",1),
+	SEED(INT,"seed",42);
+
+	private final Type type;
+	private final String key;
+	private final Object defaultValue;
+
+	private BenchmarkPreference(final Type type, final String key, final Object defaultValue)
+	{
+		if(defaultValue != null && !type.getType().isInstance(defaultValue))
+			throw new IllegalArgumentException("preference " + key + "of type " + type + " has false default value class: " + defaultValue.getClass());
+		this.type = type;
+		this.key = key;
+		this.defaultValue = defaultValue;
+	}
+
+	@Override
+	public Type getType()
+	{
+		return type;
+	}
+
+	@Override
+	public String getKey()
+	{
+		return key;
+	}
+
+	@Override
+	public Object getDefaultValue()
+	{
+		return defaultValue;
+	}
+
+	@Override
+	public boolean needsCaching()
+	{
+		return true;
+	}
+
+}
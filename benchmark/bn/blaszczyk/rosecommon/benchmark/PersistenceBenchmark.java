@@ -0,0 +1,273 @@
+package bn.blaszczyk.rosecommon.benchmark;
+
+import static bn.blaszczyk.rosecommon.benchmark.BenchmarkPreference.*;
+import static bn.blaszczyk.rosecommon.tools.CommonPreference.*;
+import static bn.blaszczyk.rosecommon.tools.Preferences.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rose.model.Writable;
+import bn.blaszczyk.rosecommon.controller.ControllerBuilder;
+import bn.blaszczyk.rosecommon.controller.ControllerMetrics;
+import bn.blaszczyk.rosecommon.controller.EntityPage;
+import bn.blaszczyk.rosecommon.controller.ModelController;
+import bn.blaszczyk.rosecommon.controller.OperationSnapshot;
+import bn.blaszczyk.rosecommon.tools.CommonPreference;
+import bn.blaszczyk.rosecommon.tools.Preferences;
+import bn.blaszczyk.rosecommon.tools.TypeManager;
+
+public class PersistenceBenchmark
+{
+	private static final Logger LOGGER = LogManager.getLogger(PersistenceBenchmark.class);
+
+	private static final Logger REPORT = LogManager.getLogger(PersistenceBenchmark.class.getName() + ".report");
+
+	private static final String KEY_DRIVER = "javax.persistence.jdbc.driver";
+	private static final String KEY_DIALECT = "hibernate.dialect";
+	private static final String KEY_HBM2DDL = "hibernate.hbm2ddl.auto";
+
+	private static final String H2_DRIVER = "org.h2.Driver";
+	private static final String H2_DIALECT = "org.hibernate.dialect.H2Dialect";
+
+	public static void main(final String[] args)
+	{
+		Preferences.setMainClass(PersistenceBenchmark.class);
+		Preferences.cacheArguments(args, CommonPreference.values(), BenchmarkPreference.values());
+		try
+		{
+			new PersistenceBenchmark().run();
+		}
+		catch (RoseException e)
+		{
+			LOGGER.error("benchmark failed", e);
+			System.exit(1);
+		}
+	}
+
+	private final SyntheticData data;
+	private final int operations;
+	private final int batchSize;
+
+	private ModelController controller;
+	private ControllerMetrics metrics;
+	private List<Map<String, String>> filters;
+
+	public PersistenceBenchmark()
+	{
+		data = new SyntheticData(getIntegerValue(SEED), getIntegerValue(SCALE), getIntegerValue(FAN_OUT));
+		operations = Math.max(1, getIntegerValue(OPERATIONS));
+		batchSize = Math.max(1, getIntegerValue(DB_BATCH_SIZE));
+	}
+
+	public void run() throws RoseException
+	{
+		final String roseFile = getStringValue(ROSE_FILE);
+		if(roseFile.isEmpty())
+			throw new RoseException("no rose file; use -" + ROSE_FILE.getKey() + " <resource>");
+		TypeManager.parseRoseFile(roseFile);
+		controller = ControllerBuilder.forDataBase(properties()).withMetrics().build();
+		metrics = ControllerMetrics.forController(controller);
+		try
+		{
+			REPORT.info(String.format("rose benchmark scale=%d fanout=%d operations=%d batchsize=%d url=%s",
+					getIntegerValue(SCALE), getIntegerValue(FAN_OUT), operations, batchSize, getStringValue(BENCHMARK_URL)));
+			measure("populate", () -> data.populate(controller, batchSize));
+			filters = randomFilters();
+			final Map<String, IntSupplier> reads = reads();
+			for(int i = 0; i < getIntegerValue(WARMUP_ROUNDS); i++)
+				reads.values().forEach(IntSupplier::getAsInt);
+			for(final Map.Entry<String, IntSupplier> read : reads.entrySet())
+				measure(read.getKey(), read.getValue());
+			measure("update", this::update);
+			measure("delete", this::delete);
+			measure("delete where", this::deleteWhere);
+		}
+		finally
+		{
+			controller.close();
+		}
+	}
+
+	private Map<String, String> properties()
+	{
+		final Map<String, String> properties = new HashMap<>();
+		properties.put(ControllerBuilder.PERSISTENCE_UNIT, getStringValue(PERSISTENCE_UNIT));
+		properties.put(ControllerBuilder.URL, getStringValue(BENCHMARK_URL));
+		properties.put(ControllerBuilder.USER, "sa");
+		properties.put(ControllerBuilder.PASSWORD, "");
+		properties.put(KEY_DRIVER, H2_DRIVER);
+		properties.put(KEY_DIALECT, H2_DIALECT);
+		properties.put(KEY_HBM2DDL, "create-drop");
+		return properties;
+	}
+
+	private Map<String, IntSupplier> reads()
+	{
+		final Map<String, IntSupplier> reads = new LinkedHashMap<>();
+		reads.put("read by id", this::readById);
+		reads.put("read by ids", this::readByIds);
+		reads.put("read all", this::readAll);
+		reads.put("filtered query", this::filteredQuery);
+		reads.put("filtered count", this::filteredCount);
+		reads.put("paged query", this::pagedQuery);
+		return reads;
+	}
+
+	private void measure(final String name, final IntSupplier task)
+	{
+		metrics.reset();
+		LOGGER.info("start " + name);
+		final long start = System.nanoTime();
+		final int count = task.getAsInt();
+		final double millis = (System.nanoTime() - start) / 1e6;
+		REPORT.info(String.format("%-16s %8d ops %10.1f ms %12.1f ops/s", name, count, millis, count * 1000.0 / Math.max(millis, 1e-3)));
+		for(final OperationSnapshot snapshot : metrics.snapshot())
+			if(snapshot.getCount() > 0)
+				REPORT.info("    " + snapshot);
+	}
+
+	private int readById()
+	{
+		final List<Class<? extends Readable>> types = data.getTypes();
+		for(int i = 0; i < operations; i++)
+		{
+			final Class<? extends Readable> type = types.get(i % types.size());
+			controller.getEntityById(type, data.randomId(type));
+		}
+		return operations;
+	}
+
+	private int readByIds()
+	{
+		final List<Class<? extends Readable>> types = data.getTypes();
+		int count = 0;
+		for(int i = 0; count < operations && i < operations; i++)
+		{
+			final Class<? extends Readable> type = types.get(i % types.size());
+			count += controller.getEntitiesByIds(type, data.randomIds(type, batchSize)).size();
+		}
+		return count;
+	}
+
+	private int readAll()
+	{
+		int count = 0;
+		for(int i = 0; i < Math.max(1, operations / 100); i++)
+			for(final Class<? extends Readable> type : data.getTypes())
+				count += controller.getEntities(type).size();
+		return count;
+	}
+
+	private int filteredQuery()
+	{
+		final List<Class<? extends Readable>> types = data.getTypes();
+		int count = 0;
+		for(int i = 0; i < operations; i++)
+			count += controller.getEntities(types.get(i % types.size()), filters.get(i)).size();
+		return count;
+	}
+
+	private int filteredCount()
+	{
+		final List<Class<? extends Readable>> types = data.getTypes();
+		for(int i = 0; i < operations; i++)
+			controller.getEntityCount(types.get(i % types.size()), filters.get(i));
+		return operations;
+	}
+
+	private int pagedQuery()
+	{
+		final List<Class<? extends Readable>> types = data.getTypes();
+		for(int i = 0; i < operations; i++)
+		{
+			final Class<? extends Readable> type = types.get(i % types.size());
+			final Map<String, String> query = new HashMap<>();
+			query.put(EntityPage.AFTER_ID, String.valueOf(data.randomId(type)));
+			query.put(EntityPage.PAGE_SIZE, String.valueOf(batchSize));
+			controller.getEntities(type, query);
+		}
+		return operations;
+	}
+
+	private int update()
+	{
+		final List<Class<? extends Readable>> types = data.getTypes();
+		int count = 0;
+		for(int i = 0; count < operations && i < operations; i++)
+		{
+			final Class<? extends Readable> type = types.get(i % types.size());
+			final List<? extends Readable> entities = controller.getEntitiesByIds(type, data.randomIds(type, batchSize));
+			final List<Writable> writables = new ArrayList<>(entities.size());
+			for(final Readable entity : entities)
+			{
+				data.mutate((Writable) entity);
+				writables.add((Writable) entity);
+			}
+			controller.update(writables.toArray(new Writable[writables.size()]));
+			count += writables.size();
+		}
+		return count;
+	}
+
+	private int delete()
+	{
+		int count = 0;
+		for(final Class<? extends Readable> type : data.getTypes())
+		{
+			final int quota = Math.min(operations / data.getTypes().size() + 1, data.size(type) / 2);
+			for(int deleted = 0; deleted < quota; deleted += batchSize)
+			{
+				final List<Integer> ids = data.removeIds(type, Math.min(batchSize, quota - deleted));
+				final List<Writable> entities = new ArrayList<>(ids.size());
+				for(final Readable entity : controller.getEntitiesByIds(type, ids))
+					entities.add((Writable) entity);
+				controller.deleteAll(entities);
+				count += entities.size();
+			}
+		}
+		return count;
+	}
+
+	private int deleteWhere()
+	{
+		int count = 0;
+		for(final Class<? extends Readable> type : data.getTypes())
+		{
+			final List<Integer> ids = data.removeIds(type, data.size(type));
+			if(ids.isEmpty())
+				continue;
+			final Map<String, String> query = new HashMap<>();
+			query.put("id_between", ids.stream().mapToInt(Integer::intValue).min().getAsInt() + "," + ids.stream().mapToInt(Integer::intValue).max().getAsInt());
+			count += controller.deleteWhere(asWritable(type), query);
+		}
+		return count;
+	}
+
+	private List<Map<String, String>> randomFilters()
+	{
+		final List<Class<? extends Readable>> types = data.getTypes();
+		final List<Map<String, String>> filters = new ArrayList<>(operations);
+		for(int i = 0; i < operations; i++)
+		{
+			final Class<? extends Readable> type = types.get(i % types.size());
+			filters.add(data.randomFilter(controller.getEntityById(type, data.randomId(type)), i / types.size()));
+		}
+		return filters;
+	}
+
+	private static Class<? extends Writable> asWritable(final Class<? extends Readable> type)
+	{
+		return TypeManager.getClass(TypeManager.getEntityModel(type)).asSubclass(Writable.class);
+	}
+
+}
@@ -0,0 +1,264 @@
+package bn.blaszczyk.rosecommon.benchmark;
+
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rose.model.EntityField;
+import bn.blaszczyk.rose.model.EntityModel;
+import bn.blaszczyk.rose.model.EnumField;
+import bn.blaszczyk.rose.model.Field;
+import bn.blaszczyk.rose.model.PrimitiveField;
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rose.model.RelationType;
+import bn.blaszczyk.rose.model.Writable;
+import bn.blaszczyk.rosecommon.controller.ModelController;
+import bn.blaszczyk.rosecommon.tools.TypeManager;
+
+final class SyntheticData
+{
+	private static final String[] SYLLABLES = { "ro", "se", "ka", "min", "tor", "vel", "qua", "dex", "li", "ban", "sur", "pho" };
+
+	private static final long DATE_RANGE = TimeUnit.DAYS.toMillis(365);
+
+	private final Random random;
+	private final int scale;
+	private final int fanOut;
+
+	private final Map<Class<? extends Readable>, List<Integer>> ids = new LinkedHashMap<>();
+	private final Map<String, Object[]> enumConstants = new HashMap<>();
+
+	SyntheticData(final long seed, final int scale, final int fanOut)
+	{
+		this.random = new Random(seed);
+		this.scale = Math.max(1, scale);
+		this.fanOut = Math.max(1, fanOut);
+	}
+
+	List<Class<? extends Readable>> getTypes()
+	{
+		return new ArrayList<>(ids.keySet());
+	}
+
+	int size(final Class<? extends Readable> type)
+	{
+		return ids.get(type).size();
+	}
+
+	int randomId(final Class<? extends Readable> type)
+	{
+		final List<Integer> typeIds = ids.get(type);
+		return typeIds.get(random.nextInt(typeIds.size()));
+	}
+
+	List<Integer> randomIds(final Class<? extends Readable> type, final int count)
+	{
+		final List<Integer> result = new ArrayList<>(count);
+		for(int i = 0; i < count; i++)
+			result.add(randomId(type));
+		return result;
+	}
+
+	List<Integer> removeIds(final Class<? extends Readable> type, final int count)
+	{
+		final List<Integer> typeIds = ids.get(type);
+		Collections.shuffle(typeIds, random);
+		final List<Integer> removed = new ArrayList<>(typeIds.subList(0, Math.min(count, typeIds.size())));
+		typeIds.subList(0, removed.size()).clear();
+		return removed;
+	}
+
+	int populate(final ModelController controller, final int batchSize) throws RoseException
+	{
+		final Map<Class<? extends Readable>, List<Writable>> entities = new LinkedHashMap<>();
+		int count = 0;
+		for(final EntityModel entityModel : TypeManager.getEntityModels())
+		{
+			final Class<? extends Readable> type = TypeManager.getClass(entityModel);
+			final List<Writable> created = new ArrayList<>(scale);
+			for(int i = 0; i < scale; i++)
+			{
+				final Writable entity = (Writable) TypeManager.newInstance(type);
+				fill(entityModel, entity, i);
+				created.add(entity);
+			}
+			for(int from = 0; from < created.size(); from += batchSize)
+				controller.createAll(created.subList(from, Math.min(from + batchSize, created.size())));
+			final List<Integer> typeIds = new ArrayList<>(scale);
+			created.forEach(e -> typeIds.add(e.getId()));
+			ids.put(type, typeIds);
+			entities.put(type, created);
+			count += created.size();
+		}
+		link(entities);
+		for(final List<Writable> typedEntities : entities.values())
+			for(int from = 0; from < typedEntities.size(); from += batchSize)
+				controller.update(typedEntities.subList(from, Math.min(from + batchSize, typedEntities.size())).toArray(new Writable[0]));
+		return count;
+	}
+
+	void mutate(final Writable entity) throws RoseException
+	{
+		final EntityModel entityModel = TypeManager.getEntityModel(entity);
+		final List<Field> fields = entityModel.getFields();
+		for(int i = 0; i < fields.size(); i++)
+			if(fields.get(i) instanceof PrimitiveField)
+			{
+				entity.setField(i, primitiveValue((PrimitiveField) fields.get(i), random.nextInt(scale)));
+				return;
+			}
+	}
+
+	Map<String, String> randomFilter(final Readable entity, final int variant)
+	{
+		final EntityModel entityModel = TypeManager.getEntityModel(entity);
+		final List<Map<String, String>> filters = new ArrayList<>();
+		final List<Field> fields = entityModel.getFields();
+		for(int i = 0; i < fields.size(); i++)
+		{
+			final Object value = entity.getFieldValue(i);
+			if(value == null || !(fields.get(i) instanceof PrimitiveField))
+				continue;
+			final String name = fields.get(i).getName();
+			switch(((PrimitiveField) fields.get(i)).getType())
+			{
+			case INT:
+				filters.add(Collections.singletonMap(name, value.toString()));
+				break;
+			case VARCHAR:
+				final String string = value.toString();
+				if(string.length() >= 3)
+					filters.add(Collections.singletonMap(name + "_like", string.substring(0, 3)));
+				break;
+			default:
+				break;
+			}
+		}
+		for(int i = 0; i < entity.getEntityCount(); i++)
+		{
+			if(entityModel.getEntityFields().get(i).getType() != RelationType.MANYTOONE)
+				continue;
+			final Readable parent = entity.getEntityValueOne(i);
+			if(parent != null)
+				filters.add(Collections.singletonMap(entity.getEntityName(i), String.valueOf(parent.getId())));
+		}
+		final int from = Math.max(0, entity.getId() - fanOut * 10);
+		filters.add(Collections.singletonMap("id_between", from + "," + (entity.getId() + fanOut * 10)));
+		return filters.get(variant % filters.size());
+	}
+
+	private void fill(final EntityModel entityModel, final Writable entity, final int index) throws RoseException
+	{
+		final List<Field> fields = entityModel.getFields();
+		for(int i = 0; i < fields.size(); i++)
+		{
+			final Field field = fields.get(i);
+			if(field instanceof PrimitiveField)
+				entity.setField(i, primitiveValue((PrimitiveField) field, index));
+			else if(field instanceof EnumField)
+			{
+				final Object[] constants = enumConstants(TypeManager.getClass(entityModel), (EnumField) field);
+				entity.setField(i, constants.length == 0 ? null : constants[index % constants.length]);
+			}
+		}
+	}
+
+	private Object primitiveValue(final PrimitiveField field, final int index)
+	{
+		switch(field.getType())
+		{
+		case VARCHAR:
+		case CHAR:
+			final StringBuilder sb = new StringBuilder();
+			for(int i = 0; i < 3; i++)
+				sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+			sb.append(' ').append(index);
+			return field.getLength1() > 0 && sb.length() > field.getLength1() ? sb.substring(0, field.getLength1()) : sb.toString();
+		case INT:
+			return random.nextInt(Math.max(1, scale / fanOut));
+		case NUMERIC:
+			final int digits = Math.max(1, Math.min(9, field.getLength1()));
+			final int bound = (int) Math.pow(10, digits);
+			return BigDecimal.valueOf(random.nextInt(bound), Math.min(field.getLength2(), digits));
+		case DATE:
+			return new Date(System.currentTimeMillis() - (long) (random.nextDouble() * DATE_RANGE));
+		case BOOLEAN:
+			return random.nextBoolean();
+		}
+		return null;
+	}
+
+	private Object[] enumConstants(final Class<? extends Readable> type, final EnumField field)
+	{
+		return enumConstants.computeIfAbsent(type.getName() + "." + field.getName(), k -> {
+			for(final Method method : TypeManager.getImplClass(type).getMethods())
+				if(method.getName().equalsIgnoreCase("set" + field.getName()) && method.getParameterCount() == 1
+						&& method.getParameterTypes()[0].isEnum())
+					return method.getParameterTypes()[0].getEnumConstants();
+			return new Object[0];
+		});
+	}
+
+	private void link(final Map<Class<? extends Readable>, List<Writable>> entities)
+	{
+		for(final Map.Entry<Class<? extends Readable>, List<Writable>> entry : entities.entrySet())
+		{
+			final EntityModel entityModel = TypeManager.getEntityModel(entry.getKey());
+			final List<EntityField> entityFields = entityModel.getEntityFields();
+			for(int i = 0; i < entityFields.size(); i++)
+			{
+				final EntityField field = entityFields.get(i);
+				final List<Writable> targets = entities.get(TypeManager.getClass(field.getEntityModel()));
+				if(targets == null || targets.isEmpty())
+					continue;
+				final List<Writable> sources = entry.getValue();
+				for(int k = 0; k < sources.size(); k++)
+				{
+					final Writable source = sources.get(k);
+					switch(field.getType())
+					{
+					case MANYTOONE:
+						final Writable parent = targets.get((k / fanOut) % targets.size());
+						if(parent != source)
+							source.setEntity(i, parent);
+						break;
+					case ONETOONE:
+						final Writable partner = targets.get(k % targets.size());
+						if(isOwner(entityModel, field) && partner != source)
+							source.setEntity(i, partner);
+						break;
+					case MANYTOMANY:
+						if(isOwner(entityModel, field))
+							for(int j = 0; j < fanOut; j++)
+							{
+								final Writable target = targets.get(random.nextInt(targets.size()));
+								if(target != source)
+									source.addEntity(i, target);
+							}
+						break;
+					default:
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean isOwner(final EntityModel entityModel, final EntityField field)
+	{
+		final int compare = entityModel.getSimpleClassName().compareTo(field.getEntityModel().getSimpleClassName());
+		if(compare != 0)
+			return compare < 0;
+		return field.getCounterName() == null || field.getName().compareTo(field.getCounterName()) <= 0;
+	}
+
+}
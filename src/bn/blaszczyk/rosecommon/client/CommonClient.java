@@ -1,14 +1,31 @@
 package bn.blaszczyk.rosecommon.client;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
+import javax.ws.rs.client.InvocationCallback;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.Response;
 
 import org.apache.cxf.jaxrs.client.WebClient;
+import org.apache.cxf.message.Message;
 import org.apache.logging.log4j.*;
 
 import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rosecommon.controller.Deadline;
+import bn.blaszczyk.rosecommon.controller.DeadlineExceededException;
+import bn.blaszczyk.rosecommon.controller.StaleEntityException;
 import bn.blaszczyk.rosecommon.tools.CommonPreference;
 import bn.blaszczyk.rosecommon.tools.Preferences;
 
@@ -16,7 +33,21 @@ public class CommonClient {
 	
 	private static final Logger LOGGER = LogManager.getLogger(CommonClient.class);
 	
-	private final WebClient webClient;
+	private static final String USE_ASYNC_HTTP_CONDUIT = "use.async.http.conduit";
+	
+	private static final ScheduledExecutorService DEADLINE_TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread thread = new Thread(r, "rose-client-deadline");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	private final String baseUrl;
+	
+	private final WebClient asyncClient;
+	
+	private final long connectTimeout;
+	
+	private final long receiveTimeout;
 	
 	private static CommonClient instance = null;
 	
@@ -47,7 +78,14 @@ public class CommonClient {
 
 	private CommonClient(final String url)
 	{
-		webClient = WebClient.create(url + "/");
+		baseUrl = url + "/";
+		connectTimeout = Preferences.getIntegerValue(CommonPreference.SERVICE_CONNECT_TIMEOUT);
+		receiveTimeout = Preferences.getIntegerValue(CommonPreference.SERVICE_RECEIVE_TIMEOUT);
+		asyncClient = WebClient.create(baseUrl, Collections.emptyList(), true);
+		final Map<String, Object> asyncContext = WebClient.getConfig(asyncClient).getRequestContext();
+		asyncContext.put(USE_ASYNC_HTTP_CONDUIT, Boolean.TRUE);
+		asyncContext.put(Message.CONNECTION_TIMEOUT, connectTimeout);
+		asyncContext.put(Message.RECEIVE_TIMEOUT, receiveTimeout);
 	}
 	
 	public String get(final String path, final Map<String,Object[]> queries) throws RoseException
@@ -55,20 +93,25 @@ public class CommonClient {
 		try
 		{
 			LOGGER.debug("requesting GET@/" + path);
-			setPath(path);
-			for(final Map.Entry<String, Object[]> query : queries.entrySet())
-				webClient.query(query.getKey(), query.getValue());
-			final Response response = webClient.get();
-			final int status = response.getStatus();
-			final String responseString = response.readEntity(String.class);
-			if(status >= 300)
-				throw new RoseException(responseString);
-			LOGGER.debug("response message:\r\n" + responseString);
-			return responseString;
+			final WebClient client = newClient(path, queries, "GET@/" + path);
+			try
+			{
+				final Response response = client.get();
+				final int status = response.getStatus();
+				final String responseString = response.readEntity(String.class);
+				if(status >= 300)
+					throw new RoseException(responseString);
+				LOGGER.debug("response message:\r\n" + responseString);
+				return responseString;
+			}
+			finally
+			{
+				client.close();
+			}
 		}
 		catch (Exception e)
 		{
-			throw RoseException.wrap(e, "Error on GET@/" + path);
+			throw Deadline.translate(e, "Error on GET@/" + path);
 		}
 	}
 	
@@ -77,28 +120,104 @@ public class CommonClient {
 		return get(path,Collections.emptyMap());
 	}
 	
+	public CompletableFuture<String> getAsync(final String path, final Map<String,Object[]> queries)
+	{
+		final CompletableFuture<String> result = new CompletableFuture<>();
+		final Deadline deadline = Deadline.current();
+		try
+		{
+			LOGGER.debug("requesting async GET@/" + path);
+			asyncClient.replacePath(path.startsWith("/") ? path : "/" + path);
+			asyncClient.resetQuery();
+			asyncClient.encoding("UTF-8");
+			asyncClient.acceptEncoding("UTF-8");
+			for(final Map.Entry<String, Object[]> query : queries.entrySet())
+				asyncClient.query(query.getKey(), query.getValue());
+			final long timeout = deadline == null ? -1 : deadline.remainingMillis("async GET@/" + path);
+			final Future<Response> response = asyncClient.async().get(new InvocationCallback<Response>()
+			{
+				@Override
+				public void completed(final Response response)
+				{
+					try
+					{
+						final String responseString = response.readEntity(String.class);
+						if(response.getStatus() >= 300)
+							throw new RoseException(responseString);
+						LOGGER.debug("async response message:\r\n" + responseString);
+						result.complete(responseString);
+					}
+					catch (Exception e)
+					{
+						result.completeExceptionally(Deadline.translate(deadline, e, "Error on async GET@/" + path));
+					}
+				}
+
+				@Override
+				public void failed(final Throwable throwable)
+				{
+					result.completeExceptionally(Deadline.translate(deadline, throwable, "Error on async GET@/" + path));
+				}
+			});
+			if(timeout >= 0)
+			{
+				final ScheduledFuture<?> expiry = DEADLINE_TIMER.schedule(() -> {
+					if(result.completeExceptionally(new DeadlineExceededException("deadline exceeded on async GET@/" + path)))
+						response.cancel(true);
+				}, timeout, TimeUnit.MILLISECONDS);
+				result.whenComplete((r, e) -> expiry.cancel(false));
+			}
+		}
+		catch (Exception e)
+		{
+			result.completeExceptionally(Deadline.translate(deadline, e, "Error on async GET@/" + path));
+		}
+		return result;
+	}
+	
+	public Reader getReader(final String path, final Map<String,Object[]> queries) throws RoseException
+	{
+		try
+		{
+			LOGGER.debug("requesting streamed GET@/" + path);
+			final Response response = newClient(path, queries, "streamed GET@/" + path).get();
+			if(response.getStatus() >= 300)
+				throw new RoseException(response.readEntity(String.class));
+			return new InputStreamReader(response.readEntity(InputStream.class), StandardCharsets.UTF_8);
+		}
+		catch (Exception e)
+		{
+			throw Deadline.translate(e, "Error on streamed GET@/" + path);
+		}
+	}
+	
 	public String post(final String path, final String request, final Map<String,Object[]> queries) throws RoseException
 	{
 		try
 		{
 			LOGGER.debug("requesting POST@/" + path);
-			setPath(path);
-			for(final Map.Entry<String, Object[]> query : queries.entrySet())
-				webClient.query(query.getKey(), query.getValue());
-			LOGGER.debug("request message:\r\n" + request);
-			final Response response = webClient.post(request);
-			final int status = response.getStatus();
-			final String responseString = response.readEntity(String.class);
-			if(status >= 300)
-				throw new RoseException(responseString);
-			if(responseString == null)
-				return "";
-			LOGGER.debug("response message:\r\n" + responseString);
-			return responseString;
+			final WebClient client = newClient(path, queries, "POST@/" + path);
+			try
+			{
+				LOGGER.debug("request message:\r\n" + request);
+				final Response response = client.post(request);
+				final int status = response.getStatus();
+				final String responseString = response.readEntity(String.class);
+				if(status >= 300)
+					throw new RoseException(responseString);
+				if(responseString == null)
+					return "";
+				LOGGER.debug("response message:\r\n" + responseString);
+				return responseString;
+			}
+			finally
+			{
+				client.close();
+			}
 		}
 		catch(Exception e)
 		{
-			throw RoseException.wrap(e, "error on POST@/" + path);
+			throw Deadline.translate(e, "error on POST@/" + path);
 		}
 	}
 	
@@ -112,19 +231,24 @@ public class CommonClient {
 		try
 		{
 			LOGGER.debug("requesting PUT@/" + path);
-			setPath(path);
-			for(final Map.Entry<String, Object[]> query : queries.entrySet())
-				webClient.query(query.getKey(), query.getValue());
-			LOGGER.debug("request message:\r\n" + request);
-			final Response response = webClient.put(request);
-			final int status = response.getStatus();
-			final String encodedResponse = response.readEntity(String.class);
-			if(status >= 300)
-				throw new RoseException(encodedResponse);
+			final WebClient client = newClient(path, queries, "PUT@/" + path);
+			try
+			{
+				LOGGER.debug("request message:\r\n" + request);
+				final Response response = client.put(request);
+				final int status = response.getStatus();
+				final String encodedResponse = response.readEntity(String.class);
+				if(status >= 300)
+					throw new RoseException(encodedResponse);
+			}
+			finally
+			{
+				client.close();
+			}
 		}
 		catch (Exception e)
 		{
-			throw RoseException.wrap(e, "error on PUT@/" + path);
+			throw Deadline.translate(e, "error on PUT@/" + path);
 		}
 	}
 	
@@ -132,24 +256,64 @@ public class CommonClient {
 	{
 		put(path, request, Collections.emptyMap());
 	}
+	
+	public String put(final String path, final String request, final String ifMatch) throws RoseException
+	{
+		try
+		{
+			LOGGER.debug("requesting PUT@/" + path + " If-Match: " + ifMatch);
+			final WebClient client = newClient(path, Collections.emptyMap(), "PUT@/" + path);
+			try
+			{
+				client.replaceHeader(HttpHeaders.IF_MATCH, new EntityTag(ifMatch).toString());
+				LOGGER.debug("request message:\r\n" + request);
+				final Response response = client.put(request);
+				final int status = response.getStatus();
+				final String encodedResponse = response.readEntity(String.class);
+				if(status == Response.Status.PRECONDITION_FAILED.getStatusCode())
+					throw new StaleEntityException(encodedResponse);
+				if(status >= 300)
+					throw new RoseException(encodedResponse);
+				final EntityTag entityTag = response.getEntityTag();
+				return entityTag == null ? null : entityTag.getValue();
+			}
+			finally
+			{
+				client.close();
+			}
+		}
+		catch (StaleEntityException e)
+		{
+			throw e;
+		}
+		catch (Exception e)
+		{
+			throw Deadline.translate(e, "error on PUT@/" + path);
+		}
+	}
 
 	public void delete(final String path, final Map<String,Object[]> queries) throws RoseException
 	{
 		try
 		{
 			LOGGER.debug("requesting DELETE@/" + path);
-			setPath(path);
-			for(final Map.Entry<String, Object[]> query : queries.entrySet())
-				webClient.query(query.getKey(), query.getValue());
-			final Response response = webClient.delete();
-			final int status = response.getStatus();
-			final String encodedResponse = response.readEntity(String.class);
-			if(status >= 300)
-				throw new RoseException(encodedResponse);
+			final WebClient client = newClient(path, queries, "DELETE@/" + path);
+			try
+			{
+				final Response response = client.delete();
+				final int status = response.getStatus();
+				final String encodedResponse = response.readEntity(String.class);
+				if(status >= 300)
+					throw new RoseException(encodedResponse);
+			}
+			finally
+			{
+				client.close();
+			}
 		}
 		catch (Exception e) 
 		{
-			throw RoseException.wrap(e, "error on DELETE@/" + path);
+			throw Deadline.translate(e, "error on DELETE@/" + path);
 		}
 	}
 	
@@ -160,16 +324,20 @@ public class CommonClient {
 
 	public void close()
 	{
-		webClient.close();
+		asyncClient.close();
 	}
 
-
-	private void setPath(final String path)
+	private WebClient newClient(final String path, final Map<String,Object[]> queries, final String operation) throws RoseException
 	{
-		final String absolutePath = path.startsWith("/") ? path : "/" + path;
-		webClient.replacePath(absolutePath);
-		webClient.resetQuery();
-		webClient.encoding("UTF-8");
-		webClient.acceptEncoding("UTF-8");
+		final WebClient client = WebClient.create(baseUrl);
+		client.replacePath(path.startsWith("/") ? path : "/" + path);
+		client.encoding("UTF-8");
+		client.acceptEncoding("UTF-8");
+		for(final Map.Entry<String, Object[]> query : queries.entrySet())
+			client.query(query.getKey(), query.getValue());
+		final Map<String, Object> requestContext = WebClient.getConfig(client).getRequestContext();
+		requestContext.put(Message.CONNECTION_TIMEOUT, Deadline.remainingMillis(connectTimeout, operation));
+		requestContext.put(Message.RECEIVE_TIMEOUT, Deadline.remainingMillis(receiveTimeout, operation));
+		return client;
 	}
 }
@@ -1,19 +1,35 @@
 package bn.blaszczyk.rosecommon.client;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Type;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
 import java.util.Map.Entry;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
 
 import bn.blaszczyk.rose.RoseException;
 import bn.blaszczyk.rose.model.Dto;
 import bn.blaszczyk.rose.model.DtoContainer;
 import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rosecommon.dto.ChangeSetDto;
 import bn.blaszczyk.rosecommon.dto.DtoContainerRequest;
 import bn.blaszczyk.rosecommon.tools.TypeManager;
 
@@ -22,6 +38,8 @@ public class RoseClient implements Closeable
 
 	private static final Gson GSON = new Gson();
 	
+	private static final Type FIELD_VALUES_TYPE = new TypeToken<Map<String, Object[]>>(){}.getType();
+	
 	private final CommonClient client;
 
 	public RoseClient(final String url)
@@ -57,6 +75,20 @@ public class RoseClient implements Closeable
 		}
 	}
 	
+	public CompletableFuture<Dto> getDtoAsync(final Class<? extends Readable> type, final int id, final Map<String, String> query)
+	{
+		final String path = "/" + type.getSimpleName().toLowerCase() + "/" + id;
+		return client.getAsync(path, transformQuery(query))
+				.thenApply(response -> GSON.fromJson(response, TypeManager.getDtoClass(type)));
+	}
+	
+	public CompletableFuture<List<Dto>> getDtosAsync(final Class<? extends Readable> type, final Map<String, String> query)
+	{
+		final String path = "/" + type.getSimpleName().toLowerCase();
+		return client.getAsync(path, transformQuery(query))
+				.thenApply(response -> Arrays.asList(GSON.fromJson(response, TypeManager.getDtoArrayClass(type))));
+	}
+	
 	public List<Dto> getDtos(final Class<? extends Readable> type, final Map<String, String> query)
 	{
 		final String path = "/" + type.getSimpleName().toLowerCase();
@@ -73,6 +105,111 @@ public class RoseClient implements Closeable
 		}
 	}
 
+	public Map<String, Object[]> getFieldValues(final Class<? extends Readable> type, final List<String> fieldNames, final Map<String, String> query) throws RoseException
+	{
+		final String path = "/" + type.getSimpleName().toLowerCase() + "/fields";
+		try
+		{
+			final Map<String, Object[]> queries = new HashMap<>(transformQuery(query));
+			queries.put("fields", new Object[] {String.join(",", fieldNames)});
+			final String response = client.get(path, queries);
+			return GSON.fromJson(response, FIELD_VALUES_TYPE);
+		}
+		catch (Exception e)
+		{
+			throw RoseException.wrap(e, "Error on GET@/entity/" + path + "?" + query);
+		}
+	}
+
+	public List<Object[]> getAggregates(final Class<? extends Readable> type, final Map<String, String> query, final List<String> groupBy, final List<String> aggregates) throws RoseException
+	{
+		final String path = "/" + type.getSimpleName().toLowerCase() + "/aggregate";
+		try
+		{
+			final Map<String, Object[]> queries = new HashMap<>(transformQuery(query));
+			queries.put("groupBy", new Object[] {String.join(",", groupBy)});
+			queries.put("aggregates", new Object[] {String.join(",", aggregates)});
+			final String response = client.get(path, queries);
+			return Arrays.asList(GSON.fromJson(response, Object[][].class));
+		}
+		catch (Exception e)
+		{
+			throw RoseException.wrap(e, "Error on GET@/entity/" + path + "?" + query);
+		}
+	}
+
+	public ChangeSetDto getChanges(final Class<? extends Readable> type, final Date since, final Map<String, String> query) throws RoseException
+	{
+		final String path = "/" + type.getSimpleName().toLowerCase() + "/changes";
+		try
+		{
+			final Map<String, Object[]> queries = new HashMap<>(transformQuery(query));
+			if(since != null)
+				queries.put("since", new Object[] {String.valueOf(since.getTime())});
+			final String response = client.get(path, queries);
+			final JsonObject json = new JsonParser().parse(response).getAsJsonObject();
+			final Dto[] dtos = GSON.fromJson(json.get("entities"), TypeManager.getDtoArrayClass(type));
+			final Integer[] deletedIds = GSON.fromJson(json.get("deletedIds"), Integer[].class);
+			return new ChangeSetDto(Arrays.asList(dtos), Arrays.asList(deletedIds), json.get("watermark").getAsLong(), json.get("complete").getAsBoolean());
+		}
+		catch (Exception e)
+		{
+			throw RoseException.wrap(e, "Error on GET@/entity/" + path + "?since=" + since);
+		}
+	}
+
+	public Stream<Dto> streamDtos(final Class<? extends Readable> type, final Map<String, String> query) throws RoseException
+	{
+		final String path = "/" + type.getSimpleName().toLowerCase();
+		final JsonReader reader = new JsonReader(client.getReader(path, transformQuery(query)));
+		final Class<? extends Dto> dtoClass = TypeManager.getDtoClass(type);
+		try
+		{
+			reader.beginArray();
+		}
+		catch (Exception e)
+		{
+			closeQuietly(reader);
+			throw RoseException.wrap(e, "Error on GET@/entity/" + path + "?" + query);
+		}
+		final Iterator<Dto> iterator = new Iterator<Dto>()
+		{
+			@Override
+			public boolean hasNext()
+			{
+				try
+				{
+					return reader.hasNext();
+				}
+				catch (IOException e)
+				{
+					throw RoseException.wrap(e, "Error reading GET@/entity/" + path);
+				}
+			}
+
+			@Override
+			public Dto next()
+			{
+				if(!hasNext())
+					throw new NoSuchElementException();
+				return GSON.fromJson(reader, dtoClass);
+			}
+		};
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(() -> closeQuietly(reader));
+	}
+	
+	private static void closeQuietly(final JsonReader reader)
+	{
+		try
+		{
+			reader.close();
+		}
+		catch (IOException e)
+		{
+		}
+	}
+
 	private Map<String, Object[]> transformQuery(final Map<String, String> query)
 	{
 		if(query == null)
@@ -100,6 +237,23 @@ public class RoseClient implements Closeable
 		}
 	}
 
+	public CompletableFuture<List<Integer>> getIdsAsync(final String typeName)
+	{
+		final String path = "/" + typeName.toLowerCase() + "/id";
+		return client.getAsync(path, Collections.emptyMap())
+				.thenApply(response -> Arrays.stream(GSON.fromJson(response, String[].class))
+						.map(String::trim)
+						.map(Integer::parseInt)
+						.collect(Collectors.toList()));
+	}
+
+	public CompletableFuture<Integer> getCountAsync(final String typeName, final Map<String, String> query)
+	{
+		final String path = typeName + "/count";
+		return client.getAsync(path, transformQuery(query))
+				.thenApply(response -> Integer.parseInt(response.trim()));
+	}
+
 	public int getCount(final String typeName) throws RoseException
 	{
 		return getCount(typeName, Collections.emptyMap());
@@ -149,6 +303,13 @@ public class RoseClient implements Closeable
 		}
 	}
 
+	public String putDto(final Dto dto, final String ifMatch) throws RoseException
+	{
+		final String path = pathFor(dto);
+		final String request = GSON.toJson(dto);
+		return client.put(path, request, ifMatch);
+	}
+
 	public void deleteByID(final String typeName, final int id) throws RoseException
 	{
 		final String path = typeName + "/" + id;
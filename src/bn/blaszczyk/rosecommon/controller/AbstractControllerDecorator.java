@@ -1,7 +1,10 @@
 package bn.blaszczyk.rosecommon.controller;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import bn.blaszczyk.rose.RoseException;
 import bn.blaszczyk.rose.model.Readable;
@@ -34,12 +37,24 @@ abstract class AbstractControllerDecorator implements ModelController
 		return controller.getEntities(type, query);
 	}
 	
+	@Override
+	public <T extends Readable> Stream<T> streamEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		return controller.streamEntities(type, query);
+	}
+	
 	@Override
 	public <T extends Readable> List<Integer> getIds(final Class<T> type) throws RoseException
 	{
 		return controller.getIds(type);
 	}
 	
+	@Override
+	public <T extends Readable> Map<String, Object[]> getFieldValues(final Class<T> type, final List<String> fieldNames, final Map<String, String> query) throws RoseException
+	{
+		return controller.getFieldValues(type, fieldNames, query);
+	}
+	
 	@Override
 	public <T extends Readable> int getEntityCount(final Class<T> type) throws RoseException
 	{
@@ -52,6 +67,18 @@ abstract class AbstractControllerDecorator implements ModelController
 		return controller.getEntityCount(type,query);
 	}
 	
+	@Override
+	public <T extends Readable> List<Object[]> getAggregates(final Class<T> type, final Map<String, String> query, final List<String> groupBy, final Aggregate... aggregates) throws RoseException
+	{
+		return controller.getAggregates(type, query, groupBy, aggregates);
+	}
+	
+	@Override
+	public <T extends Readable> ChangeSet<T> getEntitiesModifiedSince(final Class<T> type, final Date since) throws RoseException
+	{
+		return controller.getEntitiesModifiedSince(type, since);
+	}
+	
 	@Override
 	public <T extends Readable> T getEntityById(final Class<T> type, final int id) throws RoseException
 	{
@@ -76,6 +103,12 @@ abstract class AbstractControllerDecorator implements ModelController
 		return controller.createNew(entity);
 	}
 	
+	@Override
+	public <T extends Writable> List<T> createAll(final Collection<T> entities) throws RoseException
+	{
+		return controller.createAll(entities);
+	}
+	
 	@Override
 	public Writable createCopy(final Writable entity) throws RoseException
 	{
@@ -94,6 +127,18 @@ abstract class AbstractControllerDecorator implements ModelController
 		controller.delete(entity);
 	}
 	
+	@Override
+	public void deleteAll(final Collection<? extends Writable> entities) throws RoseException
+	{
+		controller.deleteAll(entities);
+	}
+	
+	@Override
+	public <T extends Writable> int deleteWhere(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		return controller.deleteWhere(type, query);
+	}
+	
 	@Override
 	public void close() throws RoseException
 	{
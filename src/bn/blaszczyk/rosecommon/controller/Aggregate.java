@@ -0,0 +1,165 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rosecommon.tools.EntityUtils;
+
+public final class Aggregate
+{
+	public enum Function
+	{
+		COUNT, SUM, MIN, MAX, AVG;
+	}
+
+	public static Aggregate count()
+	{
+		return new Aggregate(Function.COUNT, null);
+	}
+
+	public static Aggregate count(final String fieldName)
+	{
+		return new Aggregate(Function.COUNT, fieldName);
+	}
+
+	public static Aggregate sum(final String fieldName)
+	{
+		return new Aggregate(Function.SUM, fieldName);
+	}
+
+	public static Aggregate min(final String fieldName)
+	{
+		return new Aggregate(Function.MIN, fieldName);
+	}
+
+	public static Aggregate max(final String fieldName)
+	{
+		return new Aggregate(Function.MAX, fieldName);
+	}
+
+	public static Aggregate avg(final String fieldName)
+	{
+		return new Aggregate(Function.AVG, fieldName);
+	}
+
+	public static Aggregate parse(final String aggregate) throws RoseException
+	{
+		final int open = aggregate.indexOf('(');
+		if(open < 0 || !aggregate.endsWith(")"))
+			throw new RoseException("invalid aggregate '" + aggregate + "'");
+		final Function function = Function.valueOf(aggregate.substring(0, open).trim().toUpperCase());
+		final String fieldName = aggregate.substring(open + 1, aggregate.length() - 1).trim();
+		if(fieldName.isEmpty() || fieldName.equals("*"))
+		{
+			if(function != Function.COUNT)
+				throw new RoseException("missing field in aggregate '" + aggregate + "'");
+			return count();
+		}
+		return new Aggregate(function, fieldName);
+	}
+
+	static List<Object[]> evaluate(final List<? extends Readable> entities, final List<String> groupBy, final Aggregate... aggregates) throws RoseException
+	{
+		final Map<List<Object>, List<Readable>> groups = new LinkedHashMap<>();
+		if(groupBy.isEmpty())
+			groups.put(new ArrayList<>(), new ArrayList<>(entities));
+		else
+			for(final Readable entity : entities)
+			{
+				final List<Object> key = new ArrayList<>(groupBy.size());
+				for(final String fieldName : groupBy)
+					key.add(EntityUtils.getFieldValue(entity, fieldName));
+				groups.computeIfAbsent(key, k -> new ArrayList<>()).add(entity);
+			}
+		final List<Object[]> rows = new ArrayList<>(groups.size());
+		for(final Map.Entry<List<Object>, List<Readable>> group : groups.entrySet())
+		{
+			final Object[] row = Arrays.copyOf(group.getKey().toArray(), groupBy.size() + aggregates.length);
+			for(int i = 0; i < aggregates.length; i++)
+				row[groupBy.size() + i] = aggregates[i].evaluate(group.getValue());
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	private final Function function;
+	private final String fieldName;
+
+	private Aggregate(final Function function, final String fieldName)
+	{
+		this.function = function;
+		this.fieldName = fieldName;
+	}
+
+	public Function getFunction()
+	{
+		return function;
+	}
+
+	public String getFieldName()
+	{
+		return fieldName;
+	}
+
+	@Override
+	public String toString()
+	{
+		return function.name().toLowerCase() + "(" + (fieldName == null ? "*" : fieldName) + ")";
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private Object evaluate(final List<Readable> entities) throws RoseException
+	{
+		if(fieldName == null)
+			return Long.valueOf(entities.size());
+		long count = 0;
+		Object result = null;
+		for(final Readable entity : entities)
+		{
+			final Object value = EntityUtils.getFieldValue(entity, fieldName);
+			if(value == null)
+				continue;
+			count++;
+			switch(function)
+			{
+			case SUM:
+			case AVG:
+				result = add(result, value);
+				break;
+			case MIN:
+				if(result == null || ((Comparable) value).compareTo(result) < 0)
+					result = value;
+				break;
+			case MAX:
+				if(result == null || ((Comparable) value).compareTo(result) > 0)
+					result = value;
+				break;
+			default:
+				break;
+			}
+		}
+		if(function == Function.COUNT)
+			return count;
+		if(function == Function.AVG && result != null)
+			return ((Number) result).doubleValue() / count;
+		return result;
+	}
+
+	private Object add(final Object sum, final Object value) throws RoseException
+	{
+		if(value instanceof BigDecimal)
+			return sum == null ? value : ((BigDecimal) sum).add((BigDecimal) value);
+		if(value instanceof Integer || value instanceof Long)
+			return (sum == null ? 0L : (Long) sum) + ((Number) value).longValue();
+		if(value instanceof Number)
+			return (sum == null ? 0.0 : (Double) sum) + ((Number) value).doubleValue();
+		throw new RoseException("unable to " + this + " on non-numeric value " + value);
+	}
+
+}
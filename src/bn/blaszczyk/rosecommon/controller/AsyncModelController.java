@@ -0,0 +1,56 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rose.model.Writable;
+
+public interface AsyncModelController
+{
+
+	default public <T extends Readable> CompletableFuture<List<T>> getEntities(final Class<T> type)
+	{
+		return getEntities(type, Collections.emptyMap());
+	}
+
+	public <T extends Readable> CompletableFuture<List<T>> getEntities(final Class<T> type, final Map<String,String> query);
+
+	public <T extends Readable> CompletableFuture<List<Integer>> getIds(final Class<T> type);
+
+	public <T extends Readable> CompletableFuture<Map<String,Object[]>> getFieldValues(final Class<T> type, final List<String> fieldNames, final Map<String,String> query);
+
+	default public <T extends Readable> CompletableFuture<Integer> getEntityCount(final Class<T> type)
+	{
+		return getEntityCount(type, Collections.emptyMap());
+	}
+
+	public <T extends Readable> CompletableFuture<Integer> getEntityCount(final Class<T> type, final Map<String,String> query);
+
+	public <T extends Readable> CompletableFuture<List<Object[]>> getAggregates(final Class<T> type, final Map<String,String> query, final List<String> groupBy, final Aggregate... aggregates);
+
+	public <T extends Readable> CompletableFuture<T> getEntityById(final Class<T> type, final int id);
+
+	public <T extends Readable> CompletableFuture<List<T>> getEntitiesByIds(final Class<T> type, final List<Integer> ids);
+
+	public <T extends Writable> CompletableFuture<T> createNew(final T entity);
+
+	public <T extends Writable> CompletableFuture<List<T>> createAll(final Collection<T> entities);
+
+	public CompletableFuture<Void> update(final Writable... entities);
+
+	public CompletableFuture<Void> delete(final Writable entity);
+
+	public CompletableFuture<Void> deleteAll(final Collection<? extends Writable> entities);
+
+	public <T extends Writable> CompletableFuture<Integer> deleteWhere(final Class<T> type, final Map<String,String> query);
+
+	public ModelController getController();
+
+	public void close() throws RoseException;
+
+}
@@ -2,7 +2,7 @@ package bn.blaszczyk.rosecommon.controller;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.stream.Stream;
 
 import bn.blaszczyk.rose.model.Readable;
@@ -15,7 +15,7 @@ public class Cache
 	public Cache()
 	{
 		for(final Class<? extends Readable> type : TypeManager.getEntityClasses())
-			entities.put(type, new TreeMap<>());
+			entities.put(type, new ConcurrentSkipListMap<>());
 	}
 	
 	public <T extends Readable> int count(final Class<T> type)
@@ -64,6 +64,13 @@ public class Cache
 		entities.get(TypeManager.getClass(entity)).put(entity.getId(), entity);
 	}
 	
+	@SuppressWarnings("unchecked")
+	<T extends Readable> T putIfAbsent(final T entity)
+	{
+		final Readable cached = entities.get(TypeManager.getClass(entity)).putIfAbsent(entity.getId(), entity);
+		return cached == null ? entity : (T) cached;
+	}
+	
 	void remove(final Class<? extends Readable> type, final Integer id)
 	{
 		entities(type).remove(id);
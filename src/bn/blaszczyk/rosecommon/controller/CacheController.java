@@ -1,20 +1,26 @@
 package bn.blaszczyk.rosecommon.controller;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import bn.blaszczyk.rose.RoseException;
 import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rose.model.Timestamped;
 import bn.blaszczyk.rose.model.Writable;
 import bn.blaszczyk.rosecommon.proxy.LazyList;
 import bn.blaszczyk.rosecommon.tools.EntityUtils;
+import bn.blaszczyk.rosecommon.tools.TypeManager;
 
 final class CacheController extends AbstractControllerDecorator implements ModelController
 {
 
 	private Cache cache = new Cache();
 
-	private final Set<Class<? extends Readable>> fetchedTypes = new HashSet<>() ;
+	private final Set<Class<? extends Readable>> fetchedTypes = ConcurrentHashMap.newKeySet();
+	
+	private final Map<Class<? extends Readable>, Date> watermarks = new ConcurrentHashMap<>();
 
 	CacheController(final ModelController controller)
 	{
@@ -44,12 +50,25 @@ final class CacheController extends AbstractControllerDecorator implements Model
 	@Override
 	public <T extends Readable> List<T> getEntities(final Class<T> type, final Map<String, String> query) throws RoseException
 	{
+		if(fetchedTypes.contains(type) && EntityFilter.canSelect(type, query))
+			return EntityOrder.select(cache.stream(type).filter(EntityFilter.of(type, query)), query);
 		final List<T> entities = controller.getEntities(type, query);
 		return entities.stream()
-				.map(e -> replaceOrCache(e, type))
+				.map(cache::putIfAbsent)
 				.collect(Collectors.toList());
 	}
 	
+	@Override
+	public <T extends Readable> Stream<T> streamEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		if(query.isEmpty() && fetchedTypes.contains(type))
+			return cache.stream(type)
+				.collect(Collectors.toList())
+				.stream();
+		return controller.streamEntities(type, query)
+				.map(e -> cache.has(e) ? cache.get(type, e.getId()) : e);
+	}
+	
 	@Override
 	public <T extends Readable> List<Integer> getIds(final Class<T> type) throws RoseException
 	{
@@ -59,6 +78,14 @@ final class CacheController extends AbstractControllerDecorator implements Model
 			return controller.getIds(type);
 	}
 
+	@Override
+	public <T extends Readable> Map<String, Object[]> getFieldValues(final Class<T> type, final List<String> fieldNames, final Map<String, String> query) throws RoseException
+	{
+		if(query.isEmpty() && fetchedTypes.contains(type))
+			return EntityUtils.toFieldValues(cache.stream(type).collect(Collectors.toList()), fieldNames);
+		return controller.getFieldValues(type, fieldNames, query);
+	}
+
 	@Override
 	public <T extends Readable> int getEntityCount(final Class<T> type) throws RoseException
 	{
@@ -68,11 +95,27 @@ final class CacheController extends AbstractControllerDecorator implements Model
 			return controller.getEntityCount(type);
 	}
 
+	@Override
+	public <T extends Readable> int getEntityCount(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		if(isCachedQuery(type, query))
+			return filterCache(type, query).size();
+		return controller.getEntityCount(type, query);
+	}
+
+	@Override
+	public <T extends Readable> List<Object[]> getAggregates(final Class<T> type, final Map<String, String> query, final List<String> groupBy, final Aggregate... aggregates) throws RoseException
+	{
+		if(isCachedQuery(type, query))
+			return Aggregate.evaluate(filterCache(type, query), groupBy, aggregates);
+		return controller.getAggregates(type, query, groupBy, aggregates);
+	}
+
 	@Override
 	public <T extends Readable> T getEntityById(final Class<T> type, int id) throws RoseException
 	{
 		if(!cache.has(type, id))
-			cacheOne(controller.getEntityById(type, id));
+			return cache.putIfAbsent(controller.getEntityById(type, id));
 		return cache.get(type,id);
 	}
 	
@@ -105,12 +148,19 @@ final class CacheController extends AbstractControllerDecorator implements Model
 		return entity;
 	}
 
+	@Override
+	public <T extends Writable> List<T> createAll(final Collection<T> entities) throws RoseException
+	{
+		final List<T> createdEntities = controller.createAll(entities);
+		for(final T entity : createdEntities)
+			cacheOne(entity);
+		return createdEntities;
+	}
+
 	@Override
 	public Writable createCopy(final Writable entity) throws RoseException
 	{
-		final Writable copy = controller.createCopy(entity);
-		cacheOne(copy);
-		return copy;
+		return createDeepCopy(entity).getCopy();
 	}
 	
 	@Override
@@ -125,8 +175,112 @@ final class CacheController extends AbstractControllerDecorator implements Model
 	public void delete(final Writable entity) throws RoseException
 	{
 		ensureCached(entity);
-		cache.remove(entity);
 		controller.delete(entity);
+		cache.remove(entity);
+	}
+	
+	@Override
+	public void deleteAll(final Collection<? extends Writable> entities) throws RoseException
+	{
+		for(final Writable entity : entities)
+			ensureCached(entity);
+		final List<Readable> related = related(entities);
+		controller.deleteAll(entities);
+		entities.forEach(cache::remove);
+		refreshRelated(related);
+	}
+	
+	@Override
+	public <T extends Writable> int deleteWhere(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		if(cache.count(type) == 0)
+			return controller.deleteWhere(type, query);
+		final List<T> matching;
+		if(EntityFilter.canEvaluate(type, query))
+			matching = filterCache(type, query);
+		else
+			matching = Arrays.stream(controller.getFieldValues(type, Collections.singletonList("id"), query).get("id"))
+				.map(id -> ((Number) id).intValue())
+				.filter(id -> cache.has(type, id))
+				.map(id -> cache.get(type, id))
+				.collect(Collectors.toList());
+		final List<Readable> related = related(matching);
+		final int count = controller.deleteWhere(type, query);
+		if(count > 0)
+		{
+			for(final T entity : matching)
+			{
+				ConsistencyDecorator.unlink(entity);
+				cache.remove(entity);
+			}
+			refreshRelated(related);
+		}
+		return count;
+	}
+	
+	<T extends Readable> int refresh(final Class<T> type) throws RoseException
+	{
+		final ChangeSet<T> changes = controller.getEntitiesModifiedSince(type, watermarks.get(type));
+		if(changes.isComplete())
+		{
+			final Set<Integer> currentIds = changes.getModified().stream()
+					.map(Readable::getId)
+					.collect(Collectors.toSet());
+			cache.ids(type)
+				.filter(id -> !currentIds.contains(id))
+				.collect(Collectors.toList())
+				.forEach(id -> cache.remove(type, id));
+		}
+		else
+			changes.getDeletedIds().forEach(id -> cache.remove(type, id));
+		for(final T entity : changes.getModified())
+			refreshOne(entity, type);
+		watermarks.put(type, changes.getWatermark());
+		fetchedTypes.add(type);
+		return changes.size();
+	}
+	
+	private List<Readable> related(final Collection<? extends Readable> entities)
+	{
+		final Set<Readable> deleted = Collections.newSetFromMap(new IdentityHashMap<>());
+		deleted.addAll(entities);
+		final List<Readable> related = new ArrayList<>();
+		for(final Readable entity : entities)
+			for(int i = 0; entity != null && i < entity.getEntityCount(); i++)
+			{
+				final Collection<? extends Readable> values = entity.getRelationType(i).isSecondMany()
+						? entity.getEntityValueMany(i) : Collections.singleton(entity.getEntityValueOne(i));
+				for(final Readable value : values)
+					if(value != null && !deleted.contains(value) && cache.hasExact(value))
+						related.add(value);
+			}
+		return related;
+	}
+	
+	private void refreshRelated(final List<Readable> related) throws RoseException
+	{
+		final Map<Class<? extends Readable>, Set<Integer>> relatedIds = related.stream()
+				.collect(Collectors.groupingBy(TypeManager::getClass, Collectors.mapping(Readable::getId, Collectors.toSet())));
+		for(final Map.Entry<Class<? extends Readable>, Set<Integer>> entry : relatedIds.entrySet())
+			refreshAll(entry.getKey(), new ArrayList<>(entry.getValue()));
+	}
+	
+	private <T extends Readable> void refreshAll(final Class<T> type, final List<Integer> ids) throws RoseException
+	{
+		for(final T entity : controller.getEntitiesByIds(type, ids))
+			refreshOne(entity, type);
+	}
+	
+	private boolean isCachedQuery(final Class<? extends Readable> type, final Map<String, String> query)
+	{
+		return fetchedTypes.contains(type) && EntityFilter.canEvaluate(type, query);
+	}
+	
+	private <T extends Readable> List<T> filterCache(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		return cache.stream(type)
+			.filter(EntityFilter.of(type, query))
+			.collect(Collectors.toList());
 	}
 	
 	private void ensureCached(final Readable entity) throws RoseException
@@ -137,10 +291,60 @@ final class CacheController extends AbstractControllerDecorator implements Model
 			throw new RoseException("uncached entity: " + EntityUtils.toStringSimple(entity));
 	}
 	
-	private <T extends Readable> T replaceOrCache(final T entity, final Class<T> type) throws RoseException
+	private <T extends Readable> void refreshOne(final T entity, final Class<T> type) throws RoseException
+	{
+		final T cached = cache.get(type, entity.getId());
+		if(cached == null || !(cached instanceof Writable))
+		{
+			cache.put(entity);
+			return;
+		}
+		if(cached == entity)
+			return;
+		final Writable writable = (Writable) cached;
+		for(int i = 0; i < entity.getFieldCount(); i++)
+			writable.setField(i, entity.getFieldValue(i));
+		for(int i = 0; i < entity.getEntityCount(); i++)
+			if(entity.getRelationType(i).isSecondMany())
+				refreshRelations(writable, i, entity.getEntityValueMany(i));
+			else
+				refreshRelation(writable, i, entity.getEntityValueOne(i));
+		if(cached instanceof Timestamped && entity instanceof Timestamped)
+			((Timestamped) cached).setTimestamp(((Timestamped) entity).getTimestamp());
+	}
+
+	private void refreshRelation(final Writable cached, final int index, final Readable related) throws RoseException
+	{
+		final Readable current = cached.getEntityValueOne(index);
+		if(related == null)
+		{
+			if(current != null)
+				cached.setEntity(index, null);
+		}
+		else if(current == null || current.getId() != related.getId())
+			cached.setEntity(index, (Writable) resolve(related));
+	}
+
+	private void refreshRelations(final Writable cached, final int index, final Set<? extends Readable> related) throws RoseException
+	{
+		final Set<Integer> relatedIds = related.stream()
+				.map(Readable::getId)
+				.collect(Collectors.toSet());
+		final Set<Integer> currentIds = new HashSet<>();
+		for(final Readable current : new ArrayList<>(cached.getEntityValueMany(index)))
+			if(relatedIds.contains(current.getId()))
+				currentIds.add(current.getId());
+			else
+				cached.removeEntity(index, (Writable) current);
+		for(final Readable entity : related)
+			if(!currentIds.contains(entity.getId()))
+				cached.addEntity(index, (Writable) resolve(entity));
+	}
+
+	private Readable resolve(final Readable entity) throws RoseException
 	{
 		if(cache.has(entity))
-			return cache.get(type, entity.getId());
+			return cache.get(TypeManager.getClass(entity), entity.getId());
 		cache.put(entity);
 		return entity;
 	}
@@ -156,8 +360,8 @@ final class CacheController extends AbstractControllerDecorator implements Model
 	private void cacheMany(final List<? extends Readable> newEntities, final Class<? extends Readable> type) throws RoseException
 	{
 		newEntities.stream()
-			.filter(e -> !cache.has(e))
-			.forEach(cache::put);
+			.filter(e -> e != null)
+			.forEach(cache::putIfAbsent);
 	}
 
 }
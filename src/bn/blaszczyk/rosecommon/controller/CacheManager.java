@@ -25,10 +25,13 @@ public class CacheManager
 	public static CacheManager forController(final ModelController controller)
 	{
 		ModelController c = controller;
+		SynchronizingDecorator synchronizer = null;
 		while(true)
 		{
 			if(c instanceof CacheController)
-				return new CacheManager((CacheController) c);
+				return new CacheManager((CacheController) c, synchronizer);
+			if(c instanceof SynchronizingDecorator && synchronizer == null)
+				synchronizer = (SynchronizingDecorator) c;
 			if(c instanceof AbstractControllerDecorator)
 				c = ((AbstractControllerDecorator)c).unwrap();
 			else
@@ -43,11 +46,17 @@ public class CacheManager
 	private final EntityAccess access;
 	
 	private final Cache cache; 
+	
+	private final CacheController controller;
+	
+	private final SynchronizingDecorator synchronizer;
 		
-	private CacheManager(final CacheController controller)
+	private CacheManager(final CacheController controller, final SynchronizingDecorator synchronizer)
 	{
 		this.access = new EntityAccessAdapter(controller);
 		this.cache = controller.getCache();
+		this.controller = controller;
+		this.synchronizer = synchronizer;
 	}
 	
 	public void writeTo(final Writer writer) throws RoseException
@@ -82,6 +91,13 @@ public class CacheManager
 		LOGGER.debug("done reading into cache");
 	}
 	
+	public <T extends Readable> int refresh(final Class<T> type) throws RoseException
+	{
+		final int count = synchronizer == null ? controller.refresh(type) : synchronizer.refresh(controller, type);
+		LOGGER.debug("refreshed " + count + " instances of " + type.getSimpleName());
+		return count;
+	}
+	
 	public void clear()
 	{
 		cache.clear();
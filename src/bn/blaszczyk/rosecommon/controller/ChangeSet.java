@@ -0,0 +1,63 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import bn.blaszczyk.rose.model.Readable;
+
+public final class ChangeSet<T extends Readable>
+{
+	public static final String MODIFIED_SINCE = "modifiedSince";
+
+	static <T extends Readable> ChangeSet<T> complete(final List<T> entities, final Date watermark)
+	{
+		return new ChangeSet<>(entities, Collections.emptyList(), watermark, true);
+	}
+
+	static <T extends Readable> ChangeSet<T> delta(final List<T> modified, final Collection<Integer> deletedIds, final Date watermark)
+	{
+		return new ChangeSet<>(modified, deletedIds, watermark, false);
+	}
+
+	private final List<T> modified;
+	private final List<Integer> deletedIds;
+	private final Date watermark;
+	private final boolean complete;
+
+	private ChangeSet(final List<T> modified, final Collection<Integer> deletedIds, final Date watermark, final boolean complete)
+	{
+		this.modified = modified;
+		this.deletedIds = new ArrayList<>(deletedIds);
+		this.watermark = watermark;
+		this.complete = complete;
+	}
+
+	public List<T> getModified()
+	{
+		return Collections.unmodifiableList(modified);
+	}
+
+	public List<Integer> getDeletedIds()
+	{
+		return Collections.unmodifiableList(deletedIds);
+	}
+
+	public Date getWatermark()
+	{
+		return watermark;
+	}
+
+	public boolean isComplete()
+	{
+		return complete;
+	}
+
+	public int size()
+	{
+		return modified.size() + deletedIds.size();
+	}
+
+}
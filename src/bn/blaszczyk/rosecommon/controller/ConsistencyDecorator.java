@@ -1,6 +1,7 @@
 package bn.blaszczyk.rosecommon.controller;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
@@ -8,10 +9,7 @@ import java.util.stream.Collectors;
 
 import bn.blaszczyk.rose.RoseException;
 import bn.blaszczyk.rose.model.Readable;
-import bn.blaszczyk.rose.model.Timestamped;
 import bn.blaszczyk.rose.model.Writable;
-import bn.blaszczyk.rosecommon.tools.EntityUtils;
-import bn.blaszczyk.rosecommon.tools.TypeManager;
 
 final class ConsistencyDecorator extends AbstractControllerDecorator implements ModelController
 {
@@ -47,6 +45,19 @@ final class ConsistencyDecorator extends AbstractControllerDecorator implements
 			throw new RoseException("Entity cannot be created with preset id");
 		return super.createNew(entity);
 	}
+	
+	@Override
+	public <T extends Writable> List<T> createAll(final Collection<T> entities) throws RoseException
+	{
+		for(final T entity : entities)
+		{
+			if(entity == null)
+				throw new RoseException("Null entity cannot be created");
+			if(entity.getId() >= 0)
+				throw new RoseException("Entity cannot be created with preset id");
+		}
+		return super.createAll(entities);
+	}
 
 	@Override
 	public void update(final Writable... entities) throws RoseException
@@ -55,15 +66,8 @@ final class ConsistencyDecorator extends AbstractControllerDecorator implements
 				.filter(e -> e != null)
 				.collect(Collectors.toList());
 		for(final Writable entity : checkedEntities)
-		{
-			if(entity instanceof Timestamped)
-			{
-				final Timestamped timestamped = (Timestamped) entity;
-				final Timestamped reference = (Timestamped) controller.getEntityById(TypeManager.getClass(entity), entity.getId());
-				if(!reference.getTimestamp().equals(timestamped.getTimestamp()))
-					throw new RoseException("Entity is out of synchronization: " + EntityUtils.toStringSimple(entity));
-			}
-		}
+			if(entity.getId() < 0)
+				throw new RoseException("Malicious id: " + entity.getId());
 		controller.update( checkedEntities.toArray(new Writable[checkedEntities.size()]));
 	}
 	
@@ -72,6 +76,26 @@ final class ConsistencyDecorator extends AbstractControllerDecorator implements
 	{
 		if(entity == null)
 			return;
+		unlink(entity);
+		super.delete(entity);
+	}
+	
+	@Override
+	public void deleteAll(final Collection<? extends Writable> entities) throws RoseException
+	{
+		final List<Writable> checkedEntities = entities.stream()
+				.filter(e -> e != null)
+				.collect(Collectors.toList());
+		for(final Writable entity : checkedEntities)
+			if(entity.getId() < 0)
+				throw new RoseException("Malicious id: " + entity.getId());
+		for(final Writable entity : checkedEntities)
+			unlink(entity);
+		super.deleteAll(checkedEntities);
+	}
+	
+	static void unlink(final Writable entity)
+	{
 		for(int i = 0; i < entity.getEntityCount(); i++)
 		{
 			if(entity.getRelationType(i).isSecondMany())
@@ -85,7 +109,6 @@ final class ConsistencyDecorator extends AbstractControllerDecorator implements
 				if(entity.getEntityValueOne(i) != null)
 					entity.setEntity(i, null);
 		}
-		super.delete(entity);
 	}
 	
 }
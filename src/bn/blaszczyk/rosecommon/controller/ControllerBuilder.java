@@ -3,7 +3,10 @@ package bn.blaszczyk.rosecommon.controller;
 import static bn.blaszczyk.rosecommon.tools.CommonPreference.*;
 import static bn.blaszczyk.rosecommon.tools.Preferences.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import bn.blaszczyk.rose.RoseException;
@@ -13,6 +16,12 @@ import bn.blaszczyk.rosecommon.tools.Preferences;
 
 public class ControllerBuilder
 {
+	public static final String PERSISTENCE_UNIT = PersistenceController.KEY_PERSISTENCE_UNIT;
+	public static final String URL = PersistenceController.KEY_URL;
+	public static final String USER = PersistenceController.KEY_USER;
+	public static final String PASSWORD = PersistenceController.KEY_PW;
+	
+	private static final String MYSQL_URL = "jdbc:mysql://%s/%s?useCursorFetch=true";
 
 	public static ControllerBuilder forService()
 	{
@@ -30,17 +39,70 @@ public class ControllerBuilder
 	{
 		final Map<String, String> properties = new HashMap<>();
 		if(!isDefault(DB_HOST) && !isDefault(DB_PORT) && !isDefault(DB_NAME))
-			properties.put(PersistenceController.KEY_URL, String.format("jdbc:mysql://%s:%s/%s",getStringValue(DB_HOST),getStringValue(DB_PORT), getStringValue(DB_NAME)));
+			properties.put(PersistenceController.KEY_URL, String.format(MYSQL_URL, getStringValue(DB_HOST) + ":" + getStringValue(DB_PORT), getStringValue(DB_NAME)));
 		if(!isDefault(DB_USER))
 			properties.put(PersistenceController.KEY_USER, getStringValue(DB_USER));
 		if(!isDefault(DB_PASSWORD))
 			properties.put(PersistenceController.KEY_PW, getStringValue(DB_PASSWORD));
-		return forDataBase(properties);
+		final List<Map<String,String>> replicaProperties = new ArrayList<>();
+		if(!isDefault(DB_REPLICAS))
+			for(final String replica : getStringValue(DB_REPLICAS).split(","))
+			{
+				if(replica.trim().isEmpty())
+					continue;
+				final Map<String, String> replicaProperty = new HashMap<>(properties);
+				replicaProperty.put(PersistenceController.KEY_URL, String.format(MYSQL_URL, replica.trim(), getStringValue(DB_NAME)));
+				replicaProperties.add(replicaProperty);
+			}
+		return forDataBase(properties, replicaProperties);
 	}
 	
 	public static ControllerBuilder forDataBase(final Map<String,String> properties) throws RoseException
 	{
-		return new ControllerBuilder(new PersistenceController(properties));
+		return forDataBase(properties, Collections.emptyList());
+	}
+	
+	public static ControllerBuilder forDataBase(final Map<String,String> properties, final List<Map<String,String>> replicaProperties) throws RoseException
+	{
+		final PersistenceController primary = new PersistenceController(properties);
+		if(replicaProperties.isEmpty())
+			return new ControllerBuilder(primary);
+		final List<PersistenceController> replicas = new ArrayList<>(replicaProperties.size());
+		for(final Map<String, String> replicaProperty : replicaProperties)
+			replicas.add(new PersistenceController(replicaProperty));
+		return new ControllerBuilder(new ReplicaRoutingDecorator(primary, replicas));
+	}
+	
+	public static ControllerBuilder forShards() throws RoseException
+	{
+		final Map<String, String> properties = new HashMap<>();
+		if(!isDefault(DB_USER))
+			properties.put(PersistenceController.KEY_USER, getStringValue(DB_USER));
+		if(!isDefault(DB_PASSWORD))
+			properties.put(PersistenceController.KEY_PW, getStringValue(DB_PASSWORD));
+		final List<ModelController> shards = new ArrayList<>();
+		for(final String shard : getStringValue(DB_SHARDS).split(","))
+		{
+			if(shard.trim().isEmpty())
+				continue;
+			final Map<String, String> shardProperty = new HashMap<>(properties);
+			shardProperty.put(PersistenceController.KEY_URL, String.format(MYSQL_URL, shard.trim(), getStringValue(DB_NAME)));
+			shards.add(new PersistenceController(shardProperty));
+		}
+		if(shards.isEmpty())
+			throw new RoseException("no shards configured in " + DB_SHARDS.getKey());
+		if(isDefault(DB_SHARD_RANGES))
+			return forShards(ShardRouter.hash(shards.size()), shards);
+		final String[] ranges = getStringValue(DB_SHARD_RANGES).split(",");
+		final int[] rangeStarts = new int[ranges.length];
+		for(int i = 0; i < ranges.length; i++)
+			rangeStarts[i] = Integer.parseInt(ranges[i].trim());
+		return forShards(ShardRouter.ranges(rangeStarts), shards);
+	}
+	
+	public static ControllerBuilder forShards(final ShardRouter router, final List<? extends ModelController> shards) throws RoseException
+	{
+		return new ControllerBuilder(new ShardingController(router, shards));
 	}
 	
 	private final ModelController innerController;
@@ -78,6 +140,24 @@ public class ControllerBuilder
 		return this;
 	}
 	
+	public ControllerBuilder withSearchIndex()
+	{
+		controller = new SearchIndexDecorator(controller);
+		return this;
+	}
+	
+	public ControllerBuilder withQueryCache()
+	{
+		controller = new QueryCacheDecorator(controller);
+		return this;
+	}
+	
+	public ControllerBuilder withMetrics()
+	{
+		controller = new MetricsDecorator(controller);
+		return this;
+	}
+	
 	public CacheController getCacheController()
 	{
 		return cacheController;
@@ -88,4 +168,11 @@ public class ControllerBuilder
 		return controller;
 	}
 	
+	public AsyncModelController buildAsync()
+	{
+		if(cacheController != null && !(controller instanceof SynchronizingDecorator))
+			withSynchronizer();
+		return new ExecutorAsyncController(controller);
+	}
+	
 }
@@ -0,0 +1,49 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import bn.blaszczyk.rose.RoseException;
+
+public final class ControllerMetrics
+{
+	public static ControllerMetrics forController(final ModelController controller) throws RoseException
+	{
+		ModelController current = controller;
+		while(current instanceof AbstractControllerDecorator)
+		{
+			if(current instanceof MetricsDecorator)
+				return ((MetricsDecorator) current).getMetrics();
+			current = ((AbstractControllerDecorator) current).unwrap();
+		}
+		throw new RoseException("no metrics recorded for " + controller.getClass().getSimpleName());
+	}
+
+	private final Map<String, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+	ControllerMetrics()
+	{
+	}
+
+	OperationMetrics get(final String operation, final String entityType)
+	{
+		return operations.computeIfAbsent(operation + ":" + entityType, k -> new OperationMetrics(operation, entityType));
+	}
+
+	public List<OperationSnapshot> snapshot()
+	{
+		return operations.values().stream()
+				.map(OperationMetrics::snapshot)
+				.sorted(Comparator.comparing(OperationSnapshot::getOperation).thenComparing(OperationSnapshot::getEntityType))
+				.collect(Collectors.toList());
+	}
+
+	public void reset()
+	{
+		operations.values().forEach(OperationMetrics::reset);
+	}
+
+}
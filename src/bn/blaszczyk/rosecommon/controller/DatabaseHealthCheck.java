@@ -0,0 +1,155 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+public final class DatabaseHealthCheck
+{
+	public static DatabaseHealthCheck forController(final ModelController controller)
+	{
+		ModelController c = controller;
+		while(true)
+		{
+			if(c instanceof PersistenceController)
+				return ((PersistenceController) c).getHealthCheck();
+			if(c instanceof AbstractControllerDecorator)
+				c = ((AbstractControllerDecorator)c).unwrap();
+			else
+				throw new IllegalStateException("controller does not contain PersistenceController");
+		}
+	}
+
+	private static final Logger LOGGER = LogManager.getLogger(DatabaseHealthCheck.class);
+	
+	private static final int MAX_BACKOFF_FACTOR = 32;
+	
+	private static final int MIN_PING_TIMEOUT = 1000;
+	
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread thread = new Thread(r, "db-health-check");
+		thread.setDaemon(true);
+		return thread;
+	});
+	
+	private final EntityManagerFactory entityManagerFactory;
+	
+	private final long pingInterval;
+	
+	private EntityManager entityManager;
+	
+	private ScheduledFuture<?> nextCheck;
+	
+	private final AtomicInteger failures = new AtomicInteger();
+	
+	private volatile boolean healthy = true;
+	
+	private volatile long lastSuccess = System.currentTimeMillis();
+	
+	private volatile long pingLatency = -1;
+	
+	private volatile boolean stopped = false;
+
+	DatabaseHealthCheck(final EntityManagerFactory entityManagerFactory, final long pingInterval)
+	{
+		this.entityManagerFactory = entityManagerFactory;
+		this.pingInterval = pingInterval;
+		schedule(pingInterval);
+	}
+	
+	public boolean isHealthy()
+	{
+		return healthy;
+	}
+	
+	public long getPingLatency()
+	{
+		return pingLatency;
+	}
+	
+	public long getLastSuccess()
+	{
+		return lastSuccess;
+	}
+	
+	public int getFailures()
+	{
+		return failures.get();
+	}
+	
+	void recordSuccess()
+	{
+		lastSuccess = System.currentTimeMillis();
+		healthy = true;
+	}
+	
+	synchronized void stop()
+	{
+		stopped = true;
+		if(nextCheck != null)
+			nextCheck.cancel(false);
+		closeEntityManager();
+	}
+	
+	private synchronized void schedule(final long delay)
+	{
+		if(!stopped)
+			nextCheck = SCHEDULER.schedule(this::check, delay, TimeUnit.MILLISECONDS);
+	}
+	
+	private void check()
+	{
+		final long idleTime = System.currentTimeMillis() - lastSuccess;
+		if(failures.get() == 0 && idleTime < pingInterval)
+		{
+			schedule(pingInterval - idleTime);
+			return;
+		}
+		try
+		{
+			LOGGER.debug("pinging database");
+			final long start = System.nanoTime();
+			if(entityManager == null)
+				entityManager = entityManagerFactory.createEntityManager();
+			entityManager.createNativeQuery("SELECT 1")
+				.setHint(PersistenceController.HINT_QUERY_TIMEOUT, (int) Math.max(MIN_PING_TIMEOUT, pingInterval))
+				.getSingleResult();
+			pingLatency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			failures.set(0);
+			recordSuccess();
+			schedule(pingInterval);
+		}
+		catch(Exception e)
+		{
+			healthy = false;
+			final int failureCount = failures.incrementAndGet();
+			closeEntityManager();
+			final long delay = pingInterval * Math.min(1L << Math.min(failureCount, 30), MAX_BACKOFF_FACTOR);
+			LOGGER.error("database ping unsucessful; retry in " + delay + "ms", e);
+			schedule(delay);
+		}
+	}
+	
+	private void closeEntityManager()
+	{
+		try
+		{
+			if(entityManager != null && entityManager.isOpen())
+				entityManager.close();
+		}
+		catch(Exception e)
+		{
+			LOGGER.warn("error closing health check EntityManager", e);
+		}
+		entityManager = null;
+	}
+
+}
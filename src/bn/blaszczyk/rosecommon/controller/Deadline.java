@@ -0,0 +1,95 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import bn.blaszczyk.rose.RoseException;
+
+public final class Deadline
+{
+	private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+	public static Deadline after(final long timeout, final TimeUnit unit)
+	{
+		return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+	}
+
+	public static Deadline current()
+	{
+		return CURRENT.get();
+	}
+
+	public static long remainingMillis(final long defaultMillis, final String operation) throws DeadlineExceededException
+	{
+		final Deadline deadline = current();
+		if(deadline == null)
+			return defaultMillis;
+		return Math.min(defaultMillis, deadline.remainingMillis(operation));
+	}
+
+	public static RoseException translate(final Throwable e, final String message)
+	{
+		return translate(current(), e, message);
+	}
+
+	public static RoseException translate(final Deadline deadline, final Throwable e, final String message)
+	{
+		if(e instanceof DeadlineExceededException)
+			return (DeadlineExceededException) e;
+		if(deadline != null && deadline.isExpired())
+			return new DeadlineExceededException(message + ": deadline exceeded", e);
+		return RoseException.wrap(e, message);
+	}
+
+	private final long nanoTime;
+
+	private Deadline(final long nanoTime)
+	{
+		this.nanoTime = nanoTime;
+	}
+
+	public boolean isExpired()
+	{
+		return System.nanoTime() - nanoTime >= 0;
+	}
+
+	public long remainingMillis(final String operation) throws DeadlineExceededException
+	{
+		final long remaining = TimeUnit.NANOSECONDS.toMillis(nanoTime - System.nanoTime());
+		if(remaining <= 0)
+			throw new DeadlineExceededException("deadline exceeded before " + operation);
+		return remaining;
+	}
+
+	public <R> R call(final Supplier<R> call) throws RoseException
+	{
+		final Deadline outer = CURRENT.get();
+		CURRENT.set(outer != null && outer.nanoTime - nanoTime < 0 ? outer : this);
+		try
+		{
+			return call.get();
+		}
+		finally
+		{
+			if(outer == null)
+				CURRENT.remove();
+			else
+				CURRENT.set(outer);
+		}
+	}
+
+	public void run(final Runnable call) throws RoseException
+	{
+		call(() -> {
+			call.run();
+			return null;
+		});
+	}
+
+	@Override
+	public String toString()
+	{
+		return "Deadline[" + TimeUnit.NANOSECONDS.toMillis(nanoTime - System.nanoTime()) + "ms]";
+	}
+
+}
@@ -0,0 +1,19 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import bn.blaszczyk.rose.RoseException;
+
+public class DeadlineExceededException extends RoseException
+{
+	private static final long serialVersionUID = 6118203874519622847L;
+
+	public DeadlineExceededException(final String message)
+	{
+		super(message);
+	}
+
+	public DeadlineExceededException(final String message, final Throwable cause)
+	{
+		super(message, cause);
+	}
+
+}
@@ -0,0 +1,136 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rose.model.RelationType;
+import bn.blaszczyk.rose.model.Writable;
+import bn.blaszczyk.rosecommon.tools.EntityUtils;
+import bn.blaszczyk.rosecommon.tools.TypeManager;
+
+public final class EntityCopy<T extends Writable>
+{
+	private static final Logger LOGGER = LogManager.getLogger(EntityCopy.class);
+
+	@SuppressWarnings("unchecked")
+	static <T extends Writable> EntityCopy<T> create(final T original, final ModelController controller) throws RoseException
+	{
+		if(original == null)
+			throw new RoseException("Null entity cannot be copied");
+		LOGGER.debug("start copying " + EntityUtils.toStringSimple(original));
+		final Map<Writable, Writable> copies = new IdentityHashMap<>();
+		final List<Writable> originals = new ArrayList<>();
+		final Deque<Writable> queue = new ArrayDeque<>();
+		copies.put(original, shallowCopy(original));
+		queue.add(original);
+		while(!queue.isEmpty())
+		{
+			final Writable current = queue.poll();
+			originals.add(current);
+			for(int i = 0; i < current.getEntityCount(); i++)
+				if(current.getRelationType(i) == RelationType.ONETOMANY)
+					for(final Readable child : current.getEntityValueMany(i))
+						if(child != null && !copies.containsKey(child))
+						{
+							copies.put((Writable) child, shallowCopy((Writable) child));
+							queue.add((Writable) child);
+						}
+		}
+
+		for(final Writable current : originals)
+			link(current, copies.get(current), copies);
+
+		final List<Writable> orderedCopies = new ArrayList<>(originals.size());
+		for(final Writable current : originals)
+			orderedCopies.add(copies.get(current));
+		controller.createAll(orderedCopies);
+
+		final Map<Class<? extends Readable>, Map<Integer, Integer>> idMapping = new HashMap<>();
+		for(final Writable current : originals)
+			idMapping.computeIfAbsent(TypeManager.getClass(current), t -> new LinkedHashMap<>())
+				.put(current.getId(), copies.get(current).getId());
+		LOGGER.debug("end copying " + EntityUtils.toStringSimple(original) + " count=" + orderedCopies.size());
+		return new EntityCopy<>((T) copies.get(original), orderedCopies, idMapping);
+	}
+
+	private static Writable shallowCopy(final Writable original) throws RoseException
+	{
+		final Writable copy = (Writable) TypeManager.newInstance(TypeManager.getClass(original));
+		for(int i = 0; i < original.getFieldCount(); i++)
+			copy.setField(i, original.getFieldValue(i));
+		return copy;
+	}
+
+	private static void link(final Writable original, final Writable copy, final Map<Writable, Writable> copies)
+	{
+		for(int i = 0; i < original.getEntityCount(); i++)
+			switch(original.getRelationType(i))
+			{
+			case ONETOMANY:
+				for(final Readable child : original.getEntityValueMany(i))
+					if(child != null)
+						copy.addEntity(i, copies.get(child));
+				break;
+			case MANYTOONE:
+				final Readable parent = original.getEntityValueOne(i);
+				if(parent != null && !copies.containsKey(parent))
+					copy.setEntity(i, (Writable) parent);
+				break;
+			default:
+				break;
+			}
+	}
+
+	private final T copy;
+	private final List<Writable> copies;
+	private final Map<Class<? extends Readable>, Map<Integer, Integer>> idMapping;
+
+	private EntityCopy(final T copy, final List<Writable> copies, final Map<Class<? extends Readable>, Map<Integer, Integer>> idMapping)
+	{
+		this.copy = copy;
+		this.copies = copies;
+		this.idMapping = idMapping;
+	}
+
+	public T getCopy()
+	{
+		return copy;
+	}
+
+	public List<Writable> getCopies()
+	{
+		return Collections.unmodifiableList(copies);
+	}
+
+	public Map<Integer, Integer> getIdMapping(final Class<? extends Readable> type)
+	{
+		final Map<Integer, Integer> mapping = idMapping.get(TypeManager.convertType(type));
+		return mapping == null ? Collections.emptyMap() : Collections.unmodifiableMap(mapping);
+	}
+
+	public int getCopiedId(final Readable original)
+	{
+		final Integer id = getIdMapping(TypeManager.getClass(original)).get(original.getId());
+		if(id == null)
+			throw new RoseException(EntityUtils.toStringSimple(original) + " has not been copied");
+		return id;
+	}
+
+	public int size()
+	{
+		return copies.size();
+	}
+
+}
@@ -0,0 +1,261 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rose.model.EntityField;
+import bn.blaszczyk.rose.model.EntityModel;
+import bn.blaszczyk.rose.model.Field;
+import bn.blaszczyk.rose.model.PrimitiveField;
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rose.model.Timestamped;
+import bn.blaszczyk.rosecommon.tools.EntityUtils;
+import bn.blaszczyk.rosecommon.tools.TypeManager;
+
+import static bn.blaszczyk.rosecommon.tools.Preferences.*;
+import static bn.blaszczyk.rosecommon.tools.CommonPreference.*;
+
+final class EntityFilter
+{
+	private static final String USE_OR = "useOr";
+	private static final String FETCH = "fetch";
+
+	private EntityFilter()
+	{
+	}
+
+	static boolean canEvaluate(final Class<? extends Readable> type, final Map<String, String> query)
+	{
+		final EntityModel entityModel = TypeManager.getEntityModel(type);
+		for(final String key : query.keySet())
+			if(!isKnownKey(entityModel, key))
+				return false;
+		return true;
+	}
+
+	static boolean canSelect(final Class<? extends Readable> type, final Map<String, String> query)
+	{
+		final EntityModel entityModel = TypeManager.getEntityModel(type);
+		for(final String key : query.keySet())
+			if(!isKnownKey(entityModel, key) && !EntityOrder.isLimitKey(key))
+				return false;
+		if(query.containsKey(EntityOrder.ORDER_BY))
+			for(final EntityOrder order : EntityOrder.of(query))
+				if(!order.getFieldName().equals("id") && findField(entityModel, order.getFieldName()) == null)
+					return false;
+		return true;
+	}
+	
+	private static boolean isKnownKey(final EntityModel entityModel, final String key)
+	{
+		if(key.equals(USE_OR) || key.equals(FETCH) || key.equals(EntityPage.AFTER_ID) || key.equals(ChangeSet.MODIFIED_SINCE))
+			return true;
+		if(findField(entityModel, key) != null || findEntityField(entityModel, key) != null)
+			return true;
+		final FilterOperator operator = FilterOperator.of(key);
+		if(operator == null)
+			return false;
+		final String fieldName = operator.fieldName(key);
+		if(operator == FilterOperator.LIKE)
+			return isStringField(findField(entityModel, fieldName));
+		return fieldName.equals("id") || findField(entityModel, fieldName) != null;
+	}
+
+	static <T extends Readable> Predicate<T> of(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		if(!canSelect(type, query))
+			throw new RoseException("unable to evaluate query " + query + " for " + type.getSimpleName() + " in memory");
+		final EntityModel entityModel = TypeManager.getEntityModel(type);
+		final List<Predicate<T>> predicates = new ArrayList<>();
+		for(final Field field : entityModel.getFields())
+		{
+			final String name = field.getName();
+			if(query.containsKey(name))
+			{
+				final String queryValue = query.get(name);
+				predicates.add(e -> valueEquals(EntityUtils.getFieldValue(e, name), queryValue));
+			}
+			else if(query.containsKey(FilterOperator.LIKE.key(name)) && isStringField(field))
+			{
+				final String pattern = query.get(FilterOperator.LIKE.key(name)).toLowerCase();
+				predicates.add(e -> {
+					final Object value = EntityUtils.getFieldValue(e, name);
+					return value != null && value.toString().toLowerCase().contains(pattern);
+				});
+			}
+			addOperators(query, name, predicates);
+		}
+		addOperators(query, "id", predicates);
+		for(final EntityField field : entityModel.getEntityFields())
+		{
+			final String name = field.getName();
+			if(query.containsKey(name))
+			{
+				final int id = Integer.parseInt(query.get(name).trim());
+				predicates.add(e -> isRelated(e, name, id));
+			}
+		}
+
+		Predicate<T> filter = e -> true;
+		if(!predicates.isEmpty())
+		{
+			final boolean isOr = query.containsKey(USE_OR);
+			filter = predicates.stream()
+					.reduce(isOr ? Predicate::or : Predicate::and)
+					.get();
+		}
+
+		final int fetchTimeSpan = getIntegerValue(FETCH_TIMESPAN);
+		if(fetchTimeSpan != Integer.MAX_VALUE)
+		{
+			final Calendar calendar = Calendar.getInstance();
+			calendar.add(Calendar.DATE, - fetchTimeSpan);
+			final Date start = calendar.getTime();
+			filter = filter.and(e -> !(e instanceof Timestamped) || !((Timestamped) e).getTimestamp().before(start));
+		}
+
+		if(query.containsKey(ChangeSet.MODIFIED_SINCE))
+		{
+			final Date since = (Date) QueryTemplate.parseValue(Date.class, query.get(ChangeSet.MODIFIED_SINCE));
+			filter = filter.and(e -> !(e instanceof Timestamped) || !((Timestamped) e).getTimestamp().before(since));
+		}
+
+		if(query.containsKey(EntityPage.AFTER_ID))
+		{
+			final int afterId = Integer.parseInt(query.get(EntityPage.AFTER_ID));
+			if(EntityOrder.isDescendingById(query))
+				filter = filter.and(e -> e.getId() < afterId);
+			else
+				filter = filter.and(e -> e.getId() > afterId);
+		}
+		return filter;
+	}
+
+	private static <T extends Readable> void addOperators(final Map<String, String> query, final String name, final List<Predicate<T>> predicates)
+	{
+		for(final FilterOperator operator : FilterOperator.COMPARISONS)
+		{
+			final String queryValue = query.get(operator.key(name));
+			if(queryValue != null)
+				predicates.add(e -> matches(operator, EntityUtils.getFieldValue(e, name), queryValue));
+		}
+		
+		final String inValue = query.get(FilterOperator.IN.key(name));
+		if(inValue != null)
+		{
+			final List<String> values = FilterOperator.splitValues(inValue);
+			predicates.add(e -> {
+				final Object value = EntityUtils.getFieldValue(e, name);
+				return value != null && values.stream().anyMatch(v -> valueEquals(value, v));
+			});
+		}
+		
+		final String betweenValue = query.get(FilterOperator.BETWEEN.key(name));
+		if(betweenValue != null)
+		{
+			final List<String> range = FilterOperator.splitRange(betweenValue);
+			predicates.add(e -> {
+				final Object value = EntityUtils.getFieldValue(e, name);
+				return matches(FilterOperator.GE, value, range.get(0)) && matches(FilterOperator.LE, value, range.get(1));
+			});
+		}
+		
+		final String nullValue = query.get(FilterOperator.NULL.key(name));
+		if(nullValue != null)
+		{
+			final boolean isNull = Boolean.parseBoolean(nullValue);
+			predicates.add(e -> (EntityUtils.getFieldValue(e, name) == null) == isNull);
+		}
+	}
+	
+	private static boolean matches(final FilterOperator operator, final Object value, final String queryValue)
+	{
+		if(value == null)
+			return false;
+		final int comparison = compare(value, QueryTemplate.parseValue(valueType(value), queryValue));
+		switch(operator)
+		{
+		case GT:
+			return comparison > 0;
+		case GE:
+			return comparison >= 0;
+		case LT:
+			return comparison < 0;
+		default:
+			return comparison <= 0;
+		}
+	}
+
+	static boolean valueEquals(final Object value, final String queryValue)
+	{
+		if(queryValue == null || queryValue.equals("null"))
+			return value == null;
+		if(value == null)
+			return false;
+		final Object parsed = QueryTemplate.parseValue(valueType(value), queryValue);
+		return compare(value, parsed) == 0;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static int compare(final Object value, final Object other)
+	{
+		if(value instanceof Date && other instanceof Date)
+			return Long.compare(((Date) value).getTime(), ((Date) other).getTime());
+		if(value instanceof BigDecimal && other instanceof BigDecimal)
+			return ((BigDecimal) value).compareTo((BigDecimal) other);
+		if(value instanceof Comparable && valueType(value).isInstance(other))
+			return ((Comparable) value).compareTo(other);
+		return value.equals(other) ? 0 : -1;
+	}
+
+	static Class<?> valueType(final Object value)
+	{
+		if(value instanceof Enum)
+			return ((Enum<?>) value).getDeclaringClass();
+		if(value instanceof Date)
+			return Date.class;
+		return value.getClass();
+	}
+
+	private static boolean isRelated(final Readable entity, final String name, final int id)
+	{
+		for(int i = 0; i < entity.getEntityCount(); i++)
+			if(entity.getEntityName(i).equals(name))
+			{
+				if(entity.getRelationType(i).isSecondMany())
+					return entity.getEntityValueMany(i).stream()
+							.anyMatch(r -> r != null && r.getId() == id);
+				final Readable related = entity.getEntityValueOne(i);
+				return related != null && related.getId() == id;
+			}
+		return false;
+	}
+
+	private static Field findField(final EntityModel entityModel, final String name)
+	{
+		for(final Field field : entityModel.getFields())
+			if(field.getName().equals(name))
+				return field;
+		return null;
+	}
+
+	private static EntityField findEntityField(final EntityModel entityModel, final String name)
+	{
+		for(final EntityField field : entityModel.getEntityFields())
+			if(field.getName().equals(name))
+				return field;
+		return null;
+	}
+
+	private static boolean isStringField(final Field field)
+	{
+		return field instanceof PrimitiveField && ((PrimitiveField) field).getType().getJavaType().equals(String.class);
+	}
+
+}
@@ -0,0 +1,106 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import bn.blaszczyk.rose.RoseException;
+
+final class EntityManagerPool
+{
+	private static final Logger LOGGER = LogManager.getLogger(EntityManagerPool.class);
+
+	private final EntityManagerFactory entityManagerFactory;
+
+	private final Semaphore permits;
+
+	private final int size;
+
+	EntityManagerPool(final EntityManagerFactory entityManagerFactory, final int size)
+	{
+		this.entityManagerFactory = entityManagerFactory;
+		this.size = Math.max(1, size);
+		this.permits = new Semaphore(this.size, true);
+		LOGGER.info("EntityManager pool size: " + this.size);
+	}
+
+	EntityManager acquire() throws RoseException
+	{
+		try
+		{
+			final Deadline deadline = Deadline.current();
+			if(deadline == null)
+				permits.acquire();
+			else if(!permits.tryAcquire(deadline.remainingMillis("acquiring EntityManager"), TimeUnit.MILLISECONDS))
+				throw new DeadlineExceededException("deadline exceeded while waiting for EntityManager");
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RoseException("interrupted while waiting for EntityManager", e);
+		}
+		try
+		{
+			return entityManagerFactory.createEntityManager();
+		}
+		catch(RuntimeException e)
+		{
+			permits.release();
+			throw RoseException.wrap(e, "error creating EntityManager");
+		}
+	}
+
+	void release(final EntityManager entityManager)
+	{
+		try
+		{
+			if(entityManager.isOpen())
+			{
+				final EntityTransaction transaction = entityManager.getTransaction();
+				if(transaction.isActive())
+				{
+					LOGGER.warn("rolling back pending transaction of released EntityManager");
+					transaction.rollback();
+				}
+			}
+		}
+		catch(RuntimeException e)
+		{
+			LOGGER.error("error releasing EntityManager", e);
+		}
+		finally
+		{
+			try
+			{
+				if(entityManager.isOpen())
+					entityManager.close();
+			}
+			finally
+			{
+				permits.release();
+			}
+		}
+	}
+
+	EntityManagerFactory getEntityManagerFactory()
+	{
+		return entityManagerFactory;
+	}
+
+	int size()
+	{
+		return size;
+	}
+
+	void close()
+	{
+		entityManagerFactory.close();
+	}
+
+}
@@ -0,0 +1,132 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rosecommon.tools.EntityUtils;
+
+final class EntityOrder
+{
+	static final String ORDER_BY = "orderBy";
+	static final String FIRST_RESULT = "firstResult";
+	static final String MAX_RESULTS = "maxResults";
+
+	private static final String DESC = "desc";
+	private static final String ASC = "asc";
+
+	static List<EntityOrder> parse(final String orderBy) throws RoseException
+	{
+		final List<EntityOrder> orders = new ArrayList<>();
+		for(final String order : orderBy.split(","))
+		{
+			final String[] parts = order.trim().split(":");
+			if(parts[0].isEmpty() || parts.length > 2)
+				throw new RoseException("invalid order '" + order + "'");
+			final String direction = parts.length == 2 ? parts[1].trim().toLowerCase() : ASC;
+			if(!direction.equals(ASC) && !direction.equals(DESC))
+				throw new RoseException("invalid order direction '" + parts[1] + "'");
+			orders.add(new EntityOrder(parts[0].trim(), direction.equals(DESC)));
+		}
+		return orders;
+	}
+
+	static List<EntityOrder> of(final Map<String, String> query) throws RoseException
+	{
+		if(!query.containsKey(ORDER_BY))
+			return Collections.emptyList();
+		return parse(query.get(ORDER_BY));
+	}
+
+	static boolean isLimitKey(final String queryKey)
+	{
+		return queryKey.equals(ORDER_BY) || queryKey.equals(FIRST_RESULT) || queryKey.equals(MAX_RESULTS) || queryKey.equals(EntityPage.PAGE_SIZE);
+	}
+
+	static boolean isDescendingById(final Map<String, String> query) throws RoseException
+	{
+		final List<EntityOrder> orders = of(query);
+		return !orders.isEmpty() && orders.get(0).fieldName.equals("id") && orders.get(0).descending;
+	}
+
+	static <T extends Readable> List<T> select(final Stream<T> entities, final Map<String, String> query) throws RoseException
+	{
+		final List<EntityOrder> orders = of(query);
+		final int firstResult = query.containsKey(FIRST_RESULT) ? Integer.parseInt(query.get(FIRST_RESULT)) : 0;
+		final int maxResults = maxResults(query);
+		if(orders.isEmpty() && maxResults == Integer.MAX_VALUE && firstResult == 0 && !query.containsKey(EntityPage.AFTER_ID))
+			return entities.collect(Collectors.toList());
+		final Comparator<T> comparator = comparator(orders);
+		if(maxResults == Integer.MAX_VALUE)
+			return entities.sorted(comparator)
+					.skip(firstResult)
+					.collect(Collectors.toList());
+		final int bound = firstResult + maxResults;
+		final PriorityQueue<T> heap = new PriorityQueue<>(Math.min(bound, 1024) + 1, comparator.reversed());
+		entities.forEach(e -> {
+			heap.add(e);
+			if(heap.size() > bound)
+				heap.poll();
+		});
+		final List<T> top = new ArrayList<>(heap);
+		top.sort(comparator);
+		return top.subList(Math.min(firstResult, top.size()), top.size());
+	}
+
+	static <T extends Readable> Comparator<T> comparator(final List<EntityOrder> orders)
+	{
+		Comparator<T> comparator = (e1, e2) -> 0;
+		for(final EntityOrder order : orders)
+		{
+			final Comparator<T> fieldComparator = (e1, e2) -> compareValues(EntityUtils.getFieldValue(e1, order.fieldName), EntityUtils.getFieldValue(e2, order.fieldName));
+			comparator = comparator.thenComparing(order.descending ? fieldComparator.reversed() : fieldComparator);
+		}
+		return comparator.thenComparing(Readable::getId);
+	}
+
+	private static int maxResults(final Map<String, String> query)
+	{
+		int maxResults = Integer.MAX_VALUE;
+		if(query.containsKey(MAX_RESULTS))
+			maxResults = Integer.parseInt(query.get(MAX_RESULTS));
+		if(query.containsKey(EntityPage.PAGE_SIZE))
+			maxResults = Integer.parseInt(query.get(EntityPage.PAGE_SIZE));
+		return maxResults;
+	}
+
+	private static int compareValues(final Object value, final Object other)
+	{
+		if(value == null)
+			return other == null ? 0 : -1;
+		if(other == null)
+			return 1;
+		return EntityFilter.compare(value, other);
+	}
+
+	private final String fieldName;
+	private final boolean descending;
+
+	private EntityOrder(final String fieldName, final boolean descending)
+	{
+		this.fieldName = fieldName;
+		this.descending = descending;
+	}
+
+	String getFieldName()
+	{
+		return fieldName;
+	}
+
+	boolean isDescending()
+	{
+		return descending;
+	}
+
+}
@@ -0,0 +1,58 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import bn.blaszczyk.rose.model.Readable;
+
+public final class EntityPage<T extends Readable>
+{
+	public static final String AFTER_ID = "afterId";
+	public static final String PAGE_SIZE = "pageSize";
+	
+	static <T extends Readable> EntityPage<T> of(final List<T> entities, final Map<String, String> query)
+	{
+		if(!query.containsKey(PAGE_SIZE) || entities.isEmpty())
+			return new EntityPage<>(entities, null);
+		final int pageSize = Integer.parseInt(query.get(PAGE_SIZE));
+		if(entities.size() < pageSize)
+			return new EntityPage<>(entities, null);
+		final int lastId = entities.get(entities.size() - 1).getId();
+		return new EntityPage<>(entities, String.valueOf(lastId));
+	}
+	
+	private final List<T> entities;
+	private final String continuationToken;
+	
+	private EntityPage(final List<T> entities, final String continuationToken)
+	{
+		this.entities = entities;
+		this.continuationToken = continuationToken;
+	}
+
+	public List<T> getEntities()
+	{
+		return entities;
+	}
+
+	public String getContinuationToken()
+	{
+		return continuationToken;
+	}
+	
+	public boolean hasNext()
+	{
+		return continuationToken != null;
+	}
+	
+	public Map<String, String> nextQuery(final Map<String, String> query)
+	{
+		if(!hasNext())
+			throw new IllegalStateException("no further page");
+		final Map<String, String> nextQuery = new HashMap<>(query);
+		nextQuery.put(AFTER_ID, continuationToken);
+		return nextQuery;
+	}
+	
+}
@@ -0,0 +1,216 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rose.model.Writable;
+
+import static bn.blaszczyk.rosecommon.tools.Preferences.*;
+import static bn.blaszczyk.rosecommon.tools.CommonPreference.*;
+
+final class ExecutorAsyncController implements AsyncModelController
+{
+	private static final Logger LOGGER = LogManager.getLogger(ExecutorAsyncController.class);
+
+	private static final long SHUTDOWN_TIMEOUT = 10;
+
+	private final ModelController controller;
+
+	private final RestController restController;
+
+	private final ThreadPoolExecutor readExecutor;
+
+	private final ThreadPoolExecutor writeExecutor;
+
+	ExecutorAsyncController(final ModelController controller)
+	{
+		this.controller = controller;
+		this.restController = controller instanceof RestController ? (RestController) controller : null;
+		final int queueSize = getIntegerValue(ASYNC_QUEUE_SIZE);
+		readExecutor = newExecutor("rose-async-read", getIntegerValue(ASYNC_READ_THREADS), queueSize);
+		writeExecutor = newExecutor("rose-async-write", getIntegerValue(ASYNC_WRITE_THREADS), queueSize);
+		if(restController == null && controller instanceof AbstractControllerDecorator)
+			LOGGER.info("non-blocking http reads need an undecorated RestController; reads of "
+					+ controller.getClass().getSimpleName() + " run on rose-async-read threads");
+	}
+
+	@Override
+	public ModelController getController()
+	{
+		return controller;
+	}
+
+	@Override
+	public <T extends Readable> CompletableFuture<List<T>> getEntities(final Class<T> type, final Map<String, String> query)
+	{
+		if(restController != null)
+			return restController.getEntitiesAsync(type, query, readExecutor);
+		return read(() -> controller.getEntities(type, query));
+	}
+
+	@Override
+	public <T extends Readable> CompletableFuture<List<Integer>> getIds(final Class<T> type)
+	{
+		if(restController != null)
+			return restController.getIdsAsync(type);
+		return read(() -> controller.getIds(type));
+	}
+
+	@Override
+	public <T extends Readable> CompletableFuture<Map<String, Object[]>> getFieldValues(final Class<T> type, final List<String> fieldNames, final Map<String, String> query)
+	{
+		return read(() -> controller.getFieldValues(type, fieldNames, query));
+	}
+
+	@Override
+	public <T extends Readable> CompletableFuture<Integer> getEntityCount(final Class<T> type, final Map<String, String> query)
+	{
+		if(restController != null)
+			return restController.getEntityCountAsync(type, query);
+		return read(() -> controller.getEntityCount(type, query));
+	}
+
+	@Override
+	public <T extends Readable> CompletableFuture<List<Object[]>> getAggregates(final Class<T> type, final Map<String, String> query, final List<String> groupBy, final Aggregate... aggregates)
+	{
+		return read(() -> controller.getAggregates(type, query, groupBy, aggregates));
+	}
+
+	@Override
+	public <T extends Readable> CompletableFuture<T> getEntityById(final Class<T> type, final int id)
+	{
+		if(restController != null)
+			return restController.getEntityByIdAsync(type, id, readExecutor);
+		return read(() -> controller.getEntityById(type, id));
+	}
+
+	@Override
+	public <T extends Readable> CompletableFuture<List<T>> getEntitiesByIds(final Class<T> type, final List<Integer> ids)
+	{
+		return read(() -> controller.getEntitiesByIds(type, ids));
+	}
+
+	@Override
+	public <T extends Writable> CompletableFuture<T> createNew(final T entity)
+	{
+		return write(() -> controller.createNew(entity));
+	}
+
+	@Override
+	public <T extends Writable> CompletableFuture<List<T>> createAll(final Collection<T> entities)
+	{
+		return write(() -> controller.createAll(entities));
+	}
+
+	@Override
+	public CompletableFuture<Void> update(final Writable... entities)
+	{
+		return write(() -> {
+			controller.update(entities);
+			return null;
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> delete(final Writable entity)
+	{
+		return write(() -> {
+			controller.delete(entity);
+			return null;
+		});
+	}
+
+	@Override
+	public CompletableFuture<Void> deleteAll(final Collection<? extends Writable> entities)
+	{
+		return write(() -> {
+			controller.deleteAll(entities);
+			return null;
+		});
+	}
+
+	@Override
+	public <T extends Writable> CompletableFuture<Integer> deleteWhere(final Class<T> type, final Map<String, String> query)
+	{
+		return write(() -> controller.deleteWhere(type, query));
+	}
+
+	@Override
+	public void close() throws RoseException
+	{
+		readExecutor.shutdown();
+		writeExecutor.shutdown();
+		try
+		{
+			if(!writeExecutor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS))
+				LOGGER.warn("pending writes did not finish within " + SHUTDOWN_TIMEOUT + "s");
+			readExecutor.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			readExecutor.shutdownNow();
+			writeExecutor.shutdownNow();
+			controller.close();
+		}
+	}
+
+	private <R> CompletableFuture<R> read(final Supplier<R> call)
+	{
+		return submit(readExecutor, call);
+	}
+
+	private <R> CompletableFuture<R> write(final Supplier<R> call)
+	{
+		return submit(writeExecutor, call);
+	}
+
+	private static <R> CompletableFuture<R> submit(final ThreadPoolExecutor executor, final Supplier<R> call)
+	{
+		try
+		{
+			final Deadline deadline = Deadline.current();
+			if(deadline == null)
+				return CompletableFuture.supplyAsync(call, executor);
+			return CompletableFuture.supplyAsync(() -> deadline.call(call), executor);
+		}
+		catch(RejectedExecutionException e)
+		{
+			final CompletableFuture<R> future = new CompletableFuture<>();
+			future.completeExceptionally(new RoseException("async queue full (" + executor.getQueue().size() + " pending)", e));
+			return future;
+		}
+	}
+
+	private static ThreadPoolExecutor newExecutor(final String name, final int threads, final int queueSize)
+	{
+		final int poolSize = Math.max(1, threads);
+		final AtomicInteger count = new AtomicInteger();
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(Math.max(1, queueSize)), r -> {
+					final Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+		executor.allowCoreThreadTimeOut(true);
+		LOGGER.info(name + " pool size: " + poolSize);
+		return executor;
+	}
+
+}
@@ -0,0 +1,77 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import bn.blaszczyk.rose.RoseException;
+
+enum FilterOperator
+{
+	LIKE("_like"),
+	GT("_gt"),
+	GE("_ge"),
+	LT("_lt"),
+	LE("_le"),
+	IN("_in"),
+	BETWEEN("_between"),
+	NULL("_null");
+
+	static final FilterOperator[] COMPARISONS = { GT, GE, LT, LE };
+
+	static FilterOperator of(final String queryKey)
+	{
+		for(final FilterOperator operator : values())
+			if(queryKey.endsWith(operator.suffix) && queryKey.length() > operator.suffix.length())
+				return operator;
+		return null;
+	}
+
+	static List<String> splitValues(final String queryValue)
+	{
+		final List<String> values = new ArrayList<>();
+		if(queryValue == null)
+			return values;
+		for(final String value : queryValue.split(","))
+			values.add(value.trim());
+		return values;
+	}
+
+	static List<String> splitRange(final String queryValue) throws RoseException
+	{
+		final List<String> values = splitValues(queryValue);
+		if(values.size() != 2)
+			throw new RoseException("invalid range '" + queryValue + "'; expected 'from,to'");
+		return values;
+	}
+
+	private final String suffix;
+
+	private FilterOperator(final String suffix)
+	{
+		this.suffix = suffix;
+	}
+
+	String key(final String fieldName)
+	{
+		return fieldName + suffix;
+	}
+
+	String fieldName(final String queryKey)
+	{
+		return queryKey.substring(0, queryKey.length() - suffix.length());
+	}
+
+	String structure(final String queryValue)
+	{
+		switch(this)
+		{
+		case IN:
+			return String.valueOf(splitValues(queryValue).size());
+		case NULL:
+			return String.valueOf(Boolean.parseBoolean(queryValue));
+		default:
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import bn.blaszczyk.rose.RoseException;
+
+final class HashShardRouter implements ShardRouter
+{
+	private final int shardCount;
+	
+	HashShardRouter(final int shardCount) throws RoseException
+	{
+		if(shardCount < 1)
+			throw new RoseException("invalid shard count " + shardCount);
+		this.shardCount = shardCount;
+	}
+	
+	@Override
+	public int getShardCount()
+	{
+		return shardCount;
+	}
+	
+	@Override
+	public int shardOf(final int id)
+	{
+		return Math.floorMod(id, shardCount);
+	}
+	
+	@Override
+	public int nextId(final int shard, final int after) throws RoseException
+	{
+		final long start = Math.max(1L, after + 1L);
+		final long id = start + Math.floorMod(shard - start, (long) shardCount);
+		if(id > Integer.MAX_VALUE)
+			throw new RoseException("no ids left on shard " + shard + " for " + this);
+		return (int) id;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "hash(" + shardCount + ")";
+	}
+	
+}
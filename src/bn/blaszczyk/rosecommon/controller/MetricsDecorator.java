@@ -0,0 +1,212 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rose.model.Writable;
+import bn.blaszczyk.rosecommon.tools.TypeManager;
+
+import static bn.blaszczyk.rosecommon.tools.Preferences.*;
+import static bn.blaszczyk.rosecommon.tools.CommonPreference.*;
+
+final class MetricsDecorator extends AbstractControllerDecorator implements ModelController
+{
+	private static final Logger LOGGER = LogManager.getLogger(MetricsDecorator.class);
+
+	private static final String MIXED_TYPES = "*";
+
+	private final ControllerMetrics metrics = new ControllerMetrics();
+
+	private final long slowThresholdMicros;
+
+	MetricsDecorator(final ModelController controller)
+	{
+		super(controller);
+		slowThresholdMicros = getIntegerValue(METRICS_SLOW_THRESHOLD) * 1000L;
+	}
+
+	ControllerMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	@Override
+	public <T extends Readable> List<T> getEntities(final Class<T> type) throws RoseException
+	{
+		return measure("getEntities", typeName(type), Collections.emptyMap(), () -> controller.getEntities(type), List::size);
+	}
+
+	@Override
+	public <T extends Readable> List<T> getEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		return measure("getEntities", typeName(type), query, () -> controller.getEntities(type, query), List::size);
+	}
+
+	@Override
+	public <T extends Readable> Stream<T> streamEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		return measure("streamEntities", typeName(type), query, () -> controller.streamEntities(type, query), s -> 0);
+	}
+
+	@Override
+	public <T extends Readable> List<Integer> getIds(final Class<T> type) throws RoseException
+	{
+		return measure("getIds", typeName(type), Collections.emptyMap(), () -> controller.getIds(type), List::size);
+	}
+
+	@Override
+	public <T extends Readable> Map<String, Object[]> getFieldValues(final Class<T> type, final List<String> fieldNames, final Map<String, String> query) throws RoseException
+	{
+		return measure("getFieldValues", typeName(type), query, () -> controller.getFieldValues(type, fieldNames, query),
+				v -> v.isEmpty() ? 0 : v.values().iterator().next().length);
+	}
+
+	@Override
+	public <T extends Readable> int getEntityCount(final Class<T> type) throws RoseException
+	{
+		return measure("getEntityCount", typeName(type), Collections.emptyMap(), () -> controller.getEntityCount(type), c -> 1);
+	}
+
+	@Override
+	public <T extends Readable> int getEntityCount(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		return measure("getEntityCount", typeName(type), query, () -> controller.getEntityCount(type, query), c -> 1);
+	}
+
+	@Override
+	public <T extends Readable> List<Object[]> getAggregates(final Class<T> type, final Map<String, String> query, final List<String> groupBy, final Aggregate... aggregates) throws RoseException
+	{
+		return measure("getAggregates", typeName(type), query, () -> controller.getAggregates(type, query, groupBy, aggregates), List::size);
+	}
+
+	@Override
+	public <T extends Readable> ChangeSet<T> getEntitiesModifiedSince(final Class<T> type, final Date since) throws RoseException
+	{
+		return measure("getEntitiesModifiedSince", typeName(type), Collections.emptyMap(), () -> controller.getEntitiesModifiedSince(type, since), ChangeSet::size);
+	}
+
+	@Override
+	public <T extends Readable> T getEntityById(final Class<T> type, final int id) throws RoseException
+	{
+		return measure("getEntityById", typeName(type), Collections.emptyMap(), () -> controller.getEntityById(type, id), e -> 1);
+	}
+
+	@Override
+	public <T extends Readable> List<T> getEntitiesByIds(final Class<T> type, final List<Integer> ids) throws RoseException
+	{
+		return measure("getEntitiesByIds", typeName(type), Collections.emptyMap(), () -> controller.getEntitiesByIds(type, ids), List::size);
+	}
+
+	@Override
+	public <T extends Writable> T createNew(final Class<T> type) throws RoseException
+	{
+		return measure("createNew", typeName(type), Collections.emptyMap(), () -> controller.createNew(type), e -> 1);
+	}
+
+	@Override
+	public <T extends Writable> T createNew(final T entity) throws RoseException
+	{
+		return measure("createNew", typeName(Collections.singleton(entity)), Collections.emptyMap(), () -> controller.createNew(entity), e -> 1);
+	}
+
+	@Override
+	public <T extends Writable> List<T> createAll(final Collection<T> entities) throws RoseException
+	{
+		return measure("createAll", typeName(entities), Collections.emptyMap(), () -> controller.createAll(entities), List::size);
+	}
+
+	@Override
+	public Writable createCopy(final Writable entity) throws RoseException
+	{
+		return measure("createCopy", typeName(Collections.singleton(entity)), Collections.emptyMap(), () -> controller.createCopy(entity), e -> 1);
+	}
+
+	@Override
+	public void update(final Writable... entities) throws RoseException
+	{
+		measure("update", typeName(Arrays.asList(entities)), Collections.emptyMap(), () -> {
+			controller.update(entities);
+			return entities.length;
+		}, n -> n);
+	}
+
+	@Override
+	public void delete(final Writable entity) throws RoseException
+	{
+		measure("delete", typeName(Collections.singleton(entity)), Collections.emptyMap(), () -> {
+			controller.delete(entity);
+			return 1;
+		}, n -> n);
+	}
+
+	@Override
+	public void deleteAll(final Collection<? extends Writable> entities) throws RoseException
+	{
+		measure("deleteAll", typeName(entities), Collections.emptyMap(), () -> {
+			controller.deleteAll(entities);
+			return entities.size();
+		}, n -> n);
+	}
+
+	@Override
+	public <T extends Writable> int deleteWhere(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		return measure("deleteWhere", typeName(type), query, () -> controller.deleteWhere(type, query), n -> n);
+	}
+
+	private <R> R measure(final String operation, final String entityType, final Map<String, String> query, final Supplier<R> call, final ToIntFunction<R> resultSize)
+	{
+		final long start = System.nanoTime();
+		boolean failed = true;
+		int results = 0;
+		try
+		{
+			final R result = call.get();
+			results = result == null ? 0 : resultSize.applyAsInt(result);
+			failed = false;
+			return result;
+		}
+		finally
+		{
+			final long micros = (System.nanoTime() - start) / 1000L;
+			metrics.get(operation, entityType).record(micros, results, failed);
+			if(micros >= slowThresholdMicros)
+				LOGGER.warn("slow " + operation + " of " + entityType + " took " + micros / 1000L + "ms"
+						+ (query.isEmpty() ? "" : " query=" + query) + (failed ? " (failed)" : " results=" + results));
+		}
+	}
+
+	private static String typeName(final Class<? extends Readable> type)
+	{
+		return TypeManager.convertType(type).getSimpleName();
+	}
+
+	private static String typeName(final Collection<? extends Readable> entities)
+	{
+		String name = null;
+		for(final Readable entity : entities)
+		{
+			if(entity == null)
+				continue;
+			final String entityName = TypeManager.getClass(entity).getSimpleName();
+			if(name == null)
+				name = entityName;
+			else if(!name.equals(entityName))
+				return MIXED_TYPES;
+		}
+		return name == null ? MIXED_TYPES : name;
+	}
+
+}
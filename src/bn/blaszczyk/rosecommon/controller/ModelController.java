@@ -1,12 +1,16 @@
 package bn.blaszczyk.rosecommon.controller;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import bn.blaszczyk.rose.RoseException;
 import bn.blaszczyk.rose.model.Readable;
 import bn.blaszczyk.rose.model.Writable;
+import bn.blaszczyk.rosecommon.tools.EntityUtils;
 
 public interface ModelController 
 {
@@ -18,8 +22,23 @@ public interface ModelController
 	
 	public <T extends Readable> List<T> getEntities(final Class<T> type, final Map<String,String> query) throws RoseException;
 	
+	default public <T extends Readable> Stream<T> streamEntities(final Class<T> type, final Map<String,String> query) throws RoseException
+	{
+		return getEntities(type, query).stream();
+	}
+	
+	default public <T extends Readable> EntityPage<T> getPage(final Class<T> type, final Map<String,String> query) throws RoseException
+	{
+		return EntityPage.of(getEntities(type, query), query);
+	}
+	
 	public <T extends Readable> List<Integer> getIds(final Class<T> type) throws RoseException;
 	
+	default public <T extends Readable> Map<String,Object[]> getFieldValues(final Class<T> type, final List<String> fieldNames, final Map<String,String> query) throws RoseException
+	{
+		return EntityUtils.toFieldValues(getEntities(type, query), fieldNames);
+	}
+	
 	default public <T extends Readable> int getEntityCount(final Class<T> type) throws RoseException
 	{
 		return getEntityCount(type, Collections.emptyMap());
@@ -27,6 +46,16 @@ public interface ModelController
 	
 	public <T extends Readable> int getEntityCount(final Class<T> type, final Map<String,String> query) throws RoseException;
 	
+	default public <T extends Readable> List<Object[]> getAggregates(final Class<T> type, final Map<String,String> query, final List<String> groupBy, final Aggregate... aggregates) throws RoseException
+	{
+		return Aggregate.evaluate(getEntities(type, query), groupBy, aggregates);
+	}
+	
+	default public <T extends Readable> ChangeSet<T> getEntitiesModifiedSince(final Class<T> type, final Date since) throws RoseException
+	{
+		return ChangeSet.complete(getEntities(type), new Date());
+	}
+	
 	public <T extends Readable> T getEntityById(final Class<T> type, int id) throws RoseException;
 	
 	public <T extends Readable> List<T> getEntitiesByIds(final Class<T> type, final List<Integer> ids) throws RoseException;
@@ -35,11 +64,31 @@ public interface ModelController
 	
 	public <T extends Writable> T createNew(final T entity) throws RoseException;
 	
+	public <T extends Writable> List<T> createAll(final Collection<T> entities) throws RoseException;
+	
 	public Writable createCopy(final Writable entity) throws RoseException;
 	
+	default public <T extends Writable> EntityCopy<T> createDeepCopy(final T entity) throws RoseException
+	{
+		return EntityCopy.create(entity, this);
+	}
+	
 	public void update(final Writable... entities) throws RoseException;
 
 	public void delete(final Writable entity) throws RoseException;
+	
+	default public void deleteAll(final Collection<? extends Writable> entities) throws RoseException
+	{
+		for(final Writable entity : entities)
+			delete(entity);
+	}
+	
+	default public <T extends Writable> int deleteWhere(final Class<T> type, final Map<String,String> query) throws RoseException
+	{
+		final List<T> entities = getEntities(type, query);
+		deleteAll(entities);
+		return entities.size();
+	}
 
 	public void close() throws RoseException;
 	
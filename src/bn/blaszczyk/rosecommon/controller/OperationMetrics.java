@@ -0,0 +1,67 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+final class OperationMetrics
+{
+	static final int BUCKET_COUNT = 32;
+
+	private final String operation;
+	private final String entityType;
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder errorCount = new LongAdder();
+	private final LongAdder resultCount = new LongAdder();
+	private final LongAdder totalMicros = new LongAdder();
+	private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+	private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+	OperationMetrics(final String operation, final String entityType)
+	{
+		this.operation = operation;
+		this.entityType = entityType;
+		for(int i = 0; i < BUCKET_COUNT; i++)
+			buckets[i] = new LongAdder();
+	}
+
+	void record(final long micros, final int results, final boolean failed)
+	{
+		count.increment();
+		if(failed)
+			errorCount.increment();
+		if(results > 0)
+			resultCount.add(results);
+		totalMicros.add(micros);
+		maxMicros.accumulate(micros);
+		buckets[bucket(micros)].increment();
+	}
+
+	OperationSnapshot snapshot()
+	{
+		final long[] bucketCounts = new long[BUCKET_COUNT];
+		for(int i = 0; i < BUCKET_COUNT; i++)
+			bucketCounts[i] = buckets[i].sum();
+		return new OperationSnapshot(operation, entityType, count.sum(), errorCount.sum(), resultCount.sum(),
+				totalMicros.sum(), maxMicros.get(), bucketCounts);
+	}
+
+	void reset()
+	{
+		count.reset();
+		errorCount.reset();
+		resultCount.reset();
+		totalMicros.reset();
+		maxMicros.reset();
+		for(final LongAdder bucket : buckets)
+			bucket.reset();
+	}
+
+	static int bucket(final long micros)
+	{
+		if(micros <= 1)
+			return 0;
+		return Math.min(BUCKET_COUNT - 1, 63 - Long.numberOfLeadingZeros(micros));
+	}
+
+}
@@ -0,0 +1,95 @@
+package bn.blaszczyk.rosecommon.controller;
+
+public final class OperationSnapshot
+{
+	private final String operation;
+	private final String entityType;
+	private final long count;
+	private final long errorCount;
+	private final long resultCount;
+	private final long totalMicros;
+	private final long maxMicros;
+	private final long[] buckets;
+
+	OperationSnapshot(final String operation, final String entityType, final long count, final long errorCount,
+			final long resultCount, final long totalMicros, final long maxMicros, final long[] buckets)
+	{
+		this.operation = operation;
+		this.entityType = entityType;
+		this.count = count;
+		this.errorCount = errorCount;
+		this.resultCount = resultCount;
+		this.totalMicros = totalMicros;
+		this.maxMicros = maxMicros;
+		this.buckets = buckets;
+	}
+
+	public String getOperation()
+	{
+		return operation;
+	}
+
+	public String getEntityType()
+	{
+		return entityType;
+	}
+
+	public long getCount()
+	{
+		return count;
+	}
+
+	public long getErrorCount()
+	{
+		return errorCount;
+	}
+
+	public long getResultCount()
+	{
+		return resultCount;
+	}
+
+	public double getTotalMillis()
+	{
+		return totalMicros / 1000.0;
+	}
+
+	public double getMeanMillis()
+	{
+		return count == 0 ? 0.0 : totalMicros / 1000.0 / count;
+	}
+
+	public double getMaxMillis()
+	{
+		return maxMicros / 1000.0;
+	}
+
+	public double getPercentileMillis(final double percentile)
+	{
+		if(count == 0)
+			return 0.0;
+		final long rank = (long) Math.ceil(percentile / 100.0 * count);
+		long cumulated = 0;
+		for(int i = 0; i < buckets.length; i++)
+		{
+			cumulated += buckets[i];
+			if(cumulated >= rank)
+				return Math.min(1L << (i + 1), maxMicros) / 1000.0;
+		}
+		return getMaxMillis();
+	}
+
+	public long[] getHistogram()
+	{
+		return buckets.clone();
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%s(%s) count=%d errors=%d results=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+				operation, entityType, count, errorCount, resultCount, getMeanMillis(),
+				getPercentileMillis(50), getPercentileMillis(99), getMaxMillis());
+	}
+
+}
@@ -1,19 +1,38 @@
 package bn.blaszczyk.rosecommon.controller;
 
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
+import javax.persistence.LockModeType;
 import javax.persistence.Persistence;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaDelete;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.FetchParent;
+import javax.persistence.criteria.JoinType;
+import javax.persistence.criteria.Order;
+import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
 
 import org.apache.logging.log4j.*;
+import org.hibernate.Hibernate;
+import org.hibernate.ReplicationMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.EntityPersister;
 
 import bn.blaszczyk.rose.RoseException;
 import bn.blaszczyk.rose.model.EntityField;
@@ -21,8 +40,9 @@ import bn.blaszczyk.rose.model.EntityModel;
 import bn.blaszczyk.rose.model.Field;
 import bn.blaszczyk.rose.model.PrimitiveField;
 import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rose.model.RelationType;
+import bn.blaszczyk.rose.model.Timestamped;
 import bn.blaszczyk.rose.model.Writable;
-import bn.blaszczyk.rosecommon.tools.CommonPreference;
 import bn.blaszczyk.rosecommon.tools.EntityUtils;
 import bn.blaszczyk.rosecommon.tools.TypeManager;
 
@@ -36,25 +56,62 @@ final class PersistenceController implements ModelController
 	public static final String KEY_PW = "javax.persistence.jdbc.password";
 	public static final String KEY_PERSISTENCE_UNIT = "bn.blaszczyk.rosecommon.persistence-unit";
 	
+	private static final String KEY_BATCH_SIZE = "hibernate.jdbc.batch_size";
+	private static final String KEY_ORDER_INSERTS = "hibernate.order_inserts";
+	private static final String KEY_ORDER_UPDATES = "hibernate.order_updates";
+	private static final String KEY_BATCH_VERSIONED_DATA = "hibernate.jdbc.batch_versioned_data";
+	private static final String KEY_CONNECTION_PROVIDER = "hibernate.connection.provider_class";
+	private static final String KEY_HIKARI_POOL_SIZE = "hibernate.hikari.maximumPoolSize";
+	private static final String KEY_BATCH_FETCH_SIZE = "hibernate.default_batch_fetch_size";
+	
+	private static final String HIKARI_CONNECTION_PROVIDER = "org.hibernate.hikaricp.internal.HikariCPConnectionProvider";
+	
 	private static final Logger LOGGER = LogManager.getLogger(PersistenceController.class);
-	private static final Calendar calendar = Calendar.getInstance();
 
 	private static final String TIMESTAMP = "timestamp";
 	private static final String DEFAULT_PERSISTENCE_UNIT = "rosePersistenceUnit";
+	private static final int QUERY_TEMPLATE_CACHE_SIZE = 512;
+	private static final String FETCH = "fetch";
+	private static final int MAX_IN_LIST = 1000;
+	static final String HINT_QUERY_TIMEOUT = "javax.persistence.query.timeout";
+	
+	@FunctionalInterface
+	private interface QueryDefinition<T extends Readable, R>
+	{
+		public void define(final CriteriaBuilder cb, final CriteriaQuery<R> query, final Root<? extends T> root, final QueryTemplate.Parameters parameters);
+	}
+	
+	private final EntityManagerPool entityManagerPool;
 	
-	private final EntityManager entityManager;
+	private final int batchSize;
 	
-	private final Thread checkDbConnectionThread;
+	private final QueryTemplate.Cache queryTemplates = new QueryTemplate.Cache(QUERY_TEMPLATE_CACHE_SIZE);
+	
+	private final DatabaseHealthCheck healthCheck;
+	
+	private final SecondLevelCache secondLevelCache;
+	
+	private final TombstoneLog tombstoneLog;
 
 	PersistenceController(final Map<String, String> properties) throws RoseException
 	{
 		try
 		{
 			final String persistenceUnit = properties.containsKey(KEY_PERSISTENCE_UNIT) ? properties.get(KEY_PERSISTENCE_UNIT) : DEFAULT_PERSISTENCE_UNIT;
-			final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(persistenceUnit, properties);
-			entityManager = entityManagerFactory.createEntityManager();
-			checkDbConnectionThread = new Thread(() -> checkDbConnection(),"check-db-connection");
-			checkDbConnectionThread.start();
+			batchSize = Math.max(1, getIntegerValue(DB_BATCH_SIZE));
+			final Map<String, String> fullProperties = new HashMap<>(properties);
+			fullProperties.putIfAbsent(KEY_BATCH_SIZE, String.valueOf(batchSize));
+			fullProperties.putIfAbsent(KEY_ORDER_INSERTS, "true");
+			fullProperties.putIfAbsent(KEY_ORDER_UPDATES, "true");
+			fullProperties.putIfAbsent(KEY_BATCH_VERSIONED_DATA, "true");
+			fullProperties.putIfAbsent(KEY_BATCH_FETCH_SIZE, String.valueOf(batchSize));
+			fullProperties.putIfAbsent(KEY_CONNECTION_PROVIDER, HIKARI_CONNECTION_PROVIDER);
+			fullProperties.putIfAbsent(KEY_HIKARI_POOL_SIZE, String.valueOf(Math.max(1, getIntegerValue(DB_POOL_SIZE)) + 1));
+			secondLevelCache = new SecondLevelCache(fullProperties, properties.containsKey(KEY_URL) ? persistenceUnit + "@" + properties.get(KEY_URL) : persistenceUnit);
+			final EntityManagerFactory entityManagerFactory = Persistence.createEntityManagerFactory(persistenceUnit, fullProperties);
+			entityManagerPool = new EntityManagerPool(entityManagerFactory, getIntegerValue(DB_POOL_SIZE));
+			healthCheck = new DatabaseHealthCheck(entityManagerFactory, getIntegerValue(DB_PING_INTERVAL));
+			tombstoneLog = new TombstoneLog(getIntegerValue(TOMBSTONE_RETENTION) * 1000L);
 		}
 		catch(Exception e)
 		{
@@ -62,88 +119,187 @@ final class PersistenceController implements ModelController
 		}
 	}
 	
-	private void checkDbConnection()
+	DatabaseHealthCheck getHealthCheck()
 	{
-		final int pingDbInterval = getIntegerValue(CommonPreference.DB_PING_INTERVAL);
-		while(true)
-		{
-			try
-			{
-				Thread.sleep(pingDbInterval);
-				synchronized(entityManager)
-				{
-					final Query query = entityManager.createNativeQuery("SELECT 1");
-					try
-					{
-						LOGGER.debug("pinging database");
-						query.getSingleResult();
-					}
-					catch(Exception e)
-					{
-						LOGGER.error("database ping unsucessful",e);
-					}
-				}
-			}
-			catch (InterruptedException e)
-			{
-				LOGGER.info("terminating check DB connection thread");
-				break;
-			}
-		}
+		return healthCheck;
 	}
 
 	@Override
 	public <T extends Readable> List<T> getEntities(final Class<T> type) throws RoseException
 	{
-		return getEntities(type, Collections.emptyMap());
+		return getEntities(type, Collections.emptyMap(), true);
 	}
 	
 	@Override
 	public <T extends Readable> List<T> getEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		return getEntities(type, query, false);
+	}
+	
+	private <T extends Readable> List<T> getEntities(final Class<T> type, final Map<String, String> query, final boolean initialize) throws RoseException
 	{
 		try
 		{
 			LOGGER.debug("start getting " + type.getSimpleName());
-			synchronized (entityManager)
+			final EntityManager entityManager = entityManagerPool.acquire();
+			try
 			{
-				final TypedQuery<T> typedQuery = createQuery(type, query);
-
-				if(query.containsKey("firstResult"))
-				{
-					final int firstResult = Integer.parseInt(query.get("firstResult"));
-					typedQuery.setFirstResult(firstResult);
-				}
-
-				if(query.containsKey("maxResults"))
-				{
-					final int maxResults = Integer.parseInt(query.get("maxResults"));
-					typedQuery.setMaxResults(maxResults);
-				}
-				
-				final List<T> list = typedQuery.getResultList();
-				
+				final List<T> list = query.containsKey(FETCH) && isLimited(query)
+						? getFetchedPage(entityManager, type, query)
+						: createQuery(entityManager, type, query).getResultList();
+				if(initialize)
+					initializeRelations(list);
+				healthCheck.recordSuccess();
 				LOGGER.debug("end getting " + type.getSimpleName() + " count=" + list.size());
 				return list;
 			}
+			finally
+			{
+				entityManagerPool.release(entityManager);
+			}
 		}
 		catch(Exception e)
 		{
-			throw new RoseException("error getting " + type.getSimpleName(), e);
+			throw Deadline.translate(e, "error getting " + type.getSimpleName());
 		}
 	}
 
-	private <T extends Readable> TypedQuery<T> createQuery(final Class<T> type, final Map<String,String> queryParameters)
+	private <T extends Readable> TypedQuery<T> createQuery(final EntityManager entityManager, final Class<T> type, final Map<String,String> queryParameters)
 	{
-		final Class<? extends T> implType = TypeManager.getImplClass(type);
-
-		final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-		final CriteriaQuery<T> query = cb.createQuery(type);
-		final Root<? extends T> root = query.from(implType);
-		query.select(root).distinct(true);
-
-		transformQuery(queryParameters, type, query, root);
+		final EntityModel entityModel = TypeManager.getEntityModel(type);
+		final TypedQuery<T> typedQuery = createTemplateQuery(entityManager, "entities", type, type, queryParameters, 
+				(cb, query, root, parameters) -> {
+					query.select(root).distinct(true);
+					applyOrder(cb, query, entityModel, root, queryParameters);
+					if(queryParameters.containsKey(FETCH))
+						addFetches(root, queryParameters.get(FETCH));
+				});
+		applyLimits(typedQuery, queryParameters);
+		return typedQuery;
+	}
+	
+	private <T extends Readable> List<T> getFetchedPage(final EntityManager entityManager, final Class<T> type, final Map<String,String> queryParameters)
+	{
+		final EntityModel entityModel = TypeManager.getEntityModel(type);
+		final Map<String, String> pageQuery = new HashMap<>(queryParameters);
+		pageQuery.remove(FETCH);
+		final TypedQuery<Object[]> idQuery = createTemplateQuery(entityManager, "page", type, Object[].class, pageQuery, 
+				(cb, query, root, parameters) -> {
+					final List<Selection<?>> selections = new ArrayList<>();
+					selections.add(root.get("id"));
+					selections.addAll(applyOrder(cb, query, entityModel, root, pageQuery));
+					query.multiselect(selections).distinct(true);
+				});
+		applyLimits(idQuery, pageQuery);
+		final List<Integer> ids = idQuery.getResultList().stream()
+				.map(row -> ((Number) row[0]).intValue())
+				.collect(Collectors.toList());
+		if(ids.isEmpty())
+			return new ArrayList<>();
+		final Map<String, String> fetchQuery = new HashMap<>();
+		fetchQuery.put(FETCH, queryParameters.get(FETCH));
+		fetchQuery.put(FilterOperator.IN.key("id"), ids.stream().map(String::valueOf).collect(Collectors.joining(",")));
+		final Map<Integer, T> entities = new HashMap<>();
+		for(final T entity : createQuery(entityManager, type, fetchQuery).getResultList())
+			entities.put(entity.getId(), entity);
+		return ids.stream()
+				.map(entities::get)
+				.filter(Objects::nonNull)
+				.collect(Collectors.toList());
+	}
+	
+	private static boolean isLimited(final Map<String,String> queryParameters)
+	{
+		return queryParameters.containsKey(EntityOrder.FIRST_RESULT) || queryParameters.containsKey(EntityOrder.MAX_RESULTS)
+				|| queryParameters.containsKey(EntityPage.PAGE_SIZE);
+	}
+	
+	private static boolean isPlainFilter(final String kind, final Map<String,String> queryParameters)
+	{
+		return kind.equals("entities") && !isLimited(queryParameters) && !isPaged(queryParameters)
+				&& !queryParameters.containsKey(FETCH) && !queryParameters.containsKey(ChangeSet.MODIFIED_SINCE);
+	}
+	
+	private static boolean isPaged(final Map<String,String> queryParameters)
+	{
+		return queryParameters.containsKey(EntityPage.AFTER_ID) || queryParameters.containsKey(EntityPage.PAGE_SIZE)
+				|| queryParameters.containsKey(EntityOrder.FIRST_RESULT) || queryParameters.containsKey(EntityOrder.MAX_RESULTS);
+	}
+	
+	private static List<Path<?>> applyOrder(final CriteriaBuilder cb, final CriteriaQuery<?> query, final EntityModel entityModel, final Root<?> root, final Map<String,String> queryParameters)
+	{
+		final List<Path<?>> paths = new ArrayList<>();
+		final List<Order> orders = new ArrayList<>();
+		for(final EntityOrder order : EntityOrder.of(queryParameters))
+		{
+			final String fieldName = order.getFieldName();
+			if(!fieldName.equals("id") && !isOrderable(entityModel, fieldName))
+				throw new RoseException("unable to order " + entityModel.getSimpleClassName() + " by '" + fieldName + "'");
+			if(!fieldName.equals("id") && queryParameters.containsKey(EntityPage.AFTER_ID))
+				throw new RoseException(EntityPage.AFTER_ID + " paging requires ordering by id");
+			final Path<?> path = root.get(fieldName);
+			paths.add(path);
+			orders.add(order.isDescending() ? cb.desc(path) : cb.asc(path));
+		}
+		if(!orders.isEmpty() || isPaged(queryParameters))
+			orders.add(cb.asc(root.get("id")));
+		if(!orders.isEmpty())
+			query.orderBy(orders);
+		return paths;
+	}
+	
+	private static boolean isOrderable(final EntityModel entityModel, final String fieldName)
+	{
+		for(final Field field : entityModel.getFields())
+			if(field.getName().equals(fieldName))
+				return true;
+		return false;
+	}
+	
+	private static void applyLimits(final TypedQuery<?> typedQuery, final Map<String,String> queryParameters)
+	{
+		if(queryParameters.containsKey(EntityOrder.FIRST_RESULT))
+		{
+			final int firstResult = Integer.parseInt(queryParameters.get(EntityOrder.FIRST_RESULT));
+			typedQuery.setFirstResult(firstResult);
+		}
 
-		return entityManager.createQuery(query);
+		if(queryParameters.containsKey(EntityOrder.MAX_RESULTS))
+		{
+			final int maxResults = Integer.parseInt(queryParameters.get(EntityOrder.MAX_RESULTS));
+			typedQuery.setMaxResults(maxResults);
+		}
+		
+		if(queryParameters.containsKey(EntityPage.PAGE_SIZE))
+		{
+			final int pageSize = Integer.parseInt(queryParameters.get(EntityPage.PAGE_SIZE));
+			typedQuery.setMaxResults(pageSize);
+		}
+	}
+	
+	@Override
+	public <T extends Readable> Stream<T> streamEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		LOGGER.debug("start streaming " + type.getSimpleName());
+		final EntityManager entityManager = entityManagerPool.acquire();
+		try
+		{
+			final Map<String, String> scrollQuery = new HashMap<>(query);
+			scrollQuery.remove(FETCH);
+			final ScrollableResults results = createQuery(entityManager, type, scrollQuery)
+					.unwrap(org.hibernate.query.Query.class)
+					.setFetchSize(getIntegerValue(DB_FETCH_SIZE))
+					.setReadOnly(true)
+					.scroll(ScrollMode.FORWARD_ONLY);
+			final EntityScroll<T> scroll = new EntityScroll<>(type, results, entityManager, entityManagerPool);
+			return StreamSupport.stream(Spliterators.spliteratorUnknownSize(scroll, Spliterator.ORDERED | Spliterator.NONNULL), false)
+					.onClose(scroll::close);
+		}
+		catch(Exception e)
+		{
+			entityManagerPool.release(entityManager);
+			throw Deadline.translate(e, "error streaming " + type.getSimpleName());
+		}
 	}
 	
 	@Override
@@ -152,32 +308,85 @@ final class PersistenceController implements ModelController
 		final String message = "getting all ids of" + type.getSimpleName();
 		try
 		{
-			synchronized (entityManager)
+			final EntityManager entityManager = entityManagerPool.acquire();
+			try
 			{
 				LOGGER.debug("start " + message);
-				final Class<? extends T> implType = TypeManager.getImplClass(type);
-				final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-				final CriteriaQuery<Integer> query = cb.createQuery(Integer.class);
-				final Root<? extends T> root = query.from(implType);
-				query.select(root.get("id"));
-				final int fetchTimeSpan = getIntegerValue(FETCH_TIMESPAN);
-				if(fetchTimeSpan != Integer.MAX_VALUE)
-				{
-					calendar.setTime(new Date());
-					calendar.add(Calendar.DATE, - fetchTimeSpan);
-					cb.greaterThanOrEqualTo(root.get(TIMESTAMP), calendar.getTime());
-				}
-				
-				final List<Integer> list = entityManager.createQuery(query).getResultList();
+				final List<Integer> list = createTemplateQuery(entityManager, "ids", type, Integer.class, Collections.emptyMap(), 
+						(cb, query, root, parameters) -> query.select(root.<Integer>get("id")))
+					.getResultList();
+				healthCheck.recordSuccess();
 				LOGGER.debug("end " + message + " count=" + list.size());
 				return list;
 			}
+			finally
+			{
+				entityManagerPool.release(entityManager);
+			}
+		}
+		catch(Exception e)
+		{
+			throw Deadline.translate(e, "error " + message);
+		}
+	}
+
+	@Override
+	public <T extends Readable> Map<String, Object[]> getFieldValues(final Class<T> type, final List<String> fieldNames, final Map<String, String> query) throws RoseException
+	{
+		final String message = "fetching " + fieldNames + " of " + type.getSimpleName();
+		try
+		{
+			final EntityManager entityManager = entityManagerPool.acquire();
+			try
+			{
+				LOGGER.debug("start " + message);
+				final EntityModel entityModel = TypeManager.getEntityModel(type);
+				final TypedQuery<Object[]> typedQuery = createTemplateQuery(entityManager, "fields(" + String.join(",", fieldNames) + ")", type, Object[].class, query, 
+						(cb, fieldQuery, root, parameters) -> {
+							final List<Selection<?>> selections = new ArrayList<>(fieldNames.size() + 1);
+							selections.add(root.get("id"));
+							for(final String fieldName : fieldNames)
+								selections.add(fieldPath(entityModel, root, fieldName));
+							selections.addAll(applyOrder(cb, fieldQuery, entityModel, root, query));
+							fieldQuery.multiselect(selections).distinct(true);
+						});
+				applyLimits(typedQuery, query);
+				final List<Object[]> rows = typedQuery.getResultList();
+				final Map<String, Object[]> fieldValues = new LinkedHashMap<>();
+				for(int column = 0; column < fieldNames.size(); column++)
+				{
+					final Object[] values = new Object[rows.size()];
+					for(int row = 0; row < rows.size(); row++)
+						values[row] = rows.get(row)[column + 1];
+					fieldValues.put(fieldNames.get(column), values);
+				}
+				healthCheck.recordSuccess();
+				LOGGER.debug("end " + message + " count=" + rows.size());
+				return fieldValues;
+			}
+			finally
+			{
+				entityManagerPool.release(entityManager);
+			}
 		}
 		catch(Exception e)
 		{
-			throw new RoseException("error " + message, e);
+			throw Deadline.translate(e, "error " + message);
 		}
 	}
+	
+	private static Path<?> fieldPath(final EntityModel entityModel, final Root<?> root, final String fieldName)
+	{
+		if(fieldName.equals("id"))
+			return root.get("id");
+		for(final Field field : entityModel.getFields())
+			if(field.getName().equals(fieldName))
+				return root.get(fieldName);
+		for(final EntityField field : entityModel.getEntityFields())
+			if(field.getName().equals(fieldName) && !field.getType().isSecondMany())
+				return root.join(fieldName, JoinType.LEFT).get("id");
+		throw new RoseException("unknown field " + fieldName + " for " + entityModel.getSimpleClassName());
+	}
 
 	@Override
 	public <T extends Readable> int getEntityCount(final Class<T> type, final Map<String,String> query) throws RoseException
@@ -185,52 +394,134 @@ final class PersistenceController implements ModelController
 		final String message = "fetching count for " + type.getSimpleName();
 		try
 		{
-			synchronized (entityManager)
+			final EntityManager entityManager = entityManagerPool.acquire();
+			try
 			{
 				LOGGER.debug("start " + message);
-				final Class<? extends T> implType = TypeManager.getImplClass(type);
-				final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-				final CriteriaQuery<Long> countQuery = cb.createQuery(Long.class);
-				final Root<? extends T> root = countQuery.from(implType);
-				countQuery.select(cb.count(root));
-				
-				transformQuery(query, type, countQuery, root);
-
-				final Long count = entityManager.createQuery(countQuery).getSingleResult();
+				final Long count = createTemplateQuery(entityManager, "count", type, Long.class, query, 
+						(cb, countQuery, root, parameters) -> countQuery.select(cb.count(root)))
+					.getSingleResult();
+				healthCheck.recordSuccess();
 				LOGGER.debug("end " + message + " count= " + count);
 				return count.intValue();
 			}
+			finally
+			{
+				entityManagerPool.release(entityManager);
+			}
 		}
 		catch (Exception e) 
 		{
-			throw RoseException.wrap(e, "error getting count for " + type.getSimpleName());
+			throw Deadline.translate(e, "error getting count for " + type.getSimpleName());
+		}
+	}
+
+	@Override
+	public <T extends Readable> List<Object[]> getAggregates(final Class<T> type, final Map<String, String> query, final List<String> groupBy, final Aggregate... aggregates) throws RoseException
+	{
+		final String message = "aggregating " + Arrays.toString(aggregates) + " of " + type.getSimpleName() + " by " + groupBy;
+		try
+		{
+			final EntityManager entityManager = entityManagerPool.acquire();
+			try
+			{
+				LOGGER.debug("start " + message);
+				final EntityModel entityModel = TypeManager.getEntityModel(type);
+				final String kind = "aggregates(" + String.join(",", groupBy) + ";" + Arrays.toString(aggregates) + ")";
+				final List<?> rows = createTemplateQuery(entityManager, kind, type, Object[].class, query, 
+						(cb, aggregateQuery, root, parameters) -> {
+							final List<Selection<?>> selections = new ArrayList<>(groupBy.size() + aggregates.length);
+							final List<Expression<?>> grouping = new ArrayList<>(groupBy.size());
+							for(final String fieldName : groupBy)
+							{
+								final Path<?> path = fieldPath(entityModel, root, fieldName);
+								selections.add(path);
+								grouping.add(path);
+							}
+							for(final Aggregate aggregate : aggregates)
+								selections.add(aggregateExpression(cb, entityModel, root, aggregate));
+							aggregateQuery.multiselect(selections).groupBy(grouping);
+						})
+					.getResultList();
+				final List<Object[]> result = rows.stream()
+						.map(row -> row instanceof Object[] ? (Object[]) row : new Object[] {row})
+						.collect(Collectors.toList());
+				healthCheck.recordSuccess();
+				LOGGER.debug("end " + message + " count=" + result.size());
+				return result;
+			}
+			finally
+			{
+				entityManagerPool.release(entityManager);
+			}
+		}
+		catch(Exception e)
+		{
+			throw Deadline.translate(e, "error " + message);
+		}
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Expression<?> aggregateExpression(final CriteriaBuilder cb, final EntityModel entityModel, final Root<?> root, final Aggregate aggregate)
+	{
+		if(aggregate.getFieldName() == null)
+			return cb.count(root);
+		final Path<?> path = fieldPath(entityModel, root, aggregate.getFieldName());
+		switch(aggregate.getFunction())
+		{
+		case SUM:
+			return cb.sum((Expression<Number>) path);
+		case AVG:
+			return cb.avg((Expression<Number>) path);
+		case MIN:
+			return cb.least((Expression<Comparable>) path);
+		case MAX:
+			return cb.greatest((Expression<Comparable>) path);
+		default:
+			return cb.count(path);
 		}
 	}
 
+	@Override
+	public <T extends Readable> ChangeSet<T> getEntitiesModifiedSince(final Class<T> type, final Date since) throws RoseException
+	{
+		final Date watermark = new Date((System.currentTimeMillis() - getIntegerValue(DB_MAX_TRANSACTION_TIME)) / 1000L * 1000L);
+		if(since == null || !Timestamped.class.isAssignableFrom(type) || !tombstoneLog.covers(type, since))
+			return ChangeSet.complete(getEntities(type), watermark);
+		final Map<String, String> query = new HashMap<>();
+		query.put(ChangeSet.MODIFIED_SINCE, String.valueOf(since.getTime()));
+		final List<T> modified = getEntities(type, query, true);
+		final Set<Integer> deletedIds = tombstoneLog.deletedSince(type, since);
+		LOGGER.debug(type.getSimpleName() + " changes since " + since + ": modified=" + modified.size() + " deleted=" + deletedIds.size());
+		return ChangeSet.delta(modified, deletedIds, watermark);
+	}
+
 	@Override
 	public <T extends Readable> T getEntityById(final Class<T> type, final int id) throws RoseException
 	{
 		final String message = "fetching " + type.getSimpleName() + " id=" + id;
 		try
 		{
-			synchronized (entityManager)
+			final EntityManager entityManager = entityManagerPool.acquire();
+			try
 			{
 				LOGGER.debug("start " + message);
-				final Class<? extends T> implType = TypeManager.getImplClass(type);
-				final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
-				final CriteriaQuery<T> query = cb.createQuery(type);
-				final Root<? extends T> root = query.from(implType);
-				query.select(root).where(cb.equal(root.get("id"), id));
+				final T result = entityManager.find(TypeManager.getImplClass(type), id, deadlineHints());
 				LOGGER.debug("end " + message);
-				final T result = entityManager.createQuery(query).getSingleResult();
 				if(result == null)
 					throw new RoseException(type.getSimpleName() + " with id=" + id + " not found.");
+				initializeRelations(Collections.singletonList(result));
+				healthCheck.recordSuccess();
 				return result;
 			}
+			finally
+			{
+				entityManagerPool.release(entityManager);
+			}
 		}
 		catch (Exception e) 
 		{
-			throw RoseException.wrap(e, "error getting " + type.getSimpleName() + " with id=" + id);
+			throw Deadline.translate(e, "error getting " + type.getSimpleName() + " with id=" + id);
 		}
 	}
 	
@@ -243,7 +534,8 @@ final class PersistenceController implements ModelController
 		final String message = "fetching " + type.getSimpleName() + " ids=" + ids;
 		try
 		{
-			synchronized (entityManager)
+			final EntityManager entityManager = entityManagerPool.acquire();
+			try
 			{
 				LOGGER.debug("start " + message);
 				final Class<? extends T> implType = TypeManager.getImplClass(type);
@@ -251,50 +543,125 @@ final class PersistenceController implements ModelController
 				final CriteriaQuery<T> query = cb.createQuery(type);
 				final Root<? extends T> root = query.from(implType);
 				query.select(root).where(root.get("id").in(ids));
-				final List<T> entities = entityManager.createQuery(query).getResultList();
+				final List<T> entities = applyDeadline(entityManager.createQuery(query)).getResultList();
+				initializeRelations(entities);
+				healthCheck.recordSuccess();
 				LOGGER.debug("end " + message);
 				return entities;
 			}
+			finally
+			{
+				entityManagerPool.release(entityManager);
+			}
 		}
 		catch (Exception e) 
 		{
-			throw RoseException.wrap(e, "error getting " + type.getSimpleName() + " with ids=" + ids);
+			throw Deadline.translate(e, "error getting " + type.getSimpleName() + " with ids=" + ids);
 		}
 	}
 
 	@Override
 	public void update(Writable... entities) throws RoseException
 	{
+		final Map<Timestamped, Date> previousTimestamps = new HashMap<>();
 		try
 		{
-			synchronized (entityManager)
+			final EntityManager entityManager = entityManagerPool.acquire();
+			try
 			{
 				LOGGER.debug("start update");
 				final EntityTransaction transaction = entityManager.getTransaction();
 				transaction.begin();
-				for(Writable entity : entities)
+				int count = 0;
+				for(final Map.Entry<Class<? extends Readable>, List<Writable>> typedEntities : groupByType(Arrays.asList(entities)).entrySet())
 				{
-					if(entity == null)
-						continue;
-					if(entity.getId() < 0)
-					{
-						throw new RoseException("illegal id: " + entity.getId());
-					}
-					else
+					final List<Writable> typeEntities = typedEntities.getValue();
+					for(int from = 0; from < typeEntities.size(); from += batchSize)
 					{
-						LOGGER.debug("updating entity:\r\n" + EntityUtils.toStringFull(entity));
-						entityManager.merge(entity);
+						final List<Writable> batch = typeEntities.subList(from, Math.min(from + batchSize, typeEntities.size()));
+						checkTimestamps(entityManager, typedEntities.getKey(), batch, previousTimestamps);
+						for(final Writable entity : batch)
+						{
+							if(entity.getId() < 0)
+								throw new RoseException("illegal id: " + entity.getId());
+							if(LOGGER.isDebugEnabled())
+								LOGGER.debug("updating entity:\r\n" + EntityUtils.toStringFull(entity));
+							entityManager.merge(entity);
+							count++;
+						}
+						flushBatch(entityManager);
 					}
 				}
 				transaction.commit();
-				LOGGER.debug("end update");
+				healthCheck.recordSuccess();
+				LOGGER.debug("end update count=" + count);
+			}
+			finally
+			{
+				entityManagerPool.release(entityManager);
 			}
 		}
 		catch(Exception e)
 		{
-			throw new RoseException("error saving or updating entities to database",e);
+			previousTimestamps.forEach(Timestamped::setTimestamp);
+			if(e instanceof StaleEntityException)
+				throw (StaleEntityException) e;
+			throw Deadline.translate(e, "error saving or updating entities to database");
+		}
+	}
+	
+	private static void checkTimestamps(final EntityManager entityManager, final Class<? extends Readable> type, 
+			final List<Writable> entities, final Map<Timestamped, Date> previousTimestamps)
+	{
+		final Map<Integer, Timestamped> timestampedEntities = new LinkedHashMap<>();
+		for(final Writable entity : entities)
+			if(entity instanceof Timestamped && entity.getId() >= 0)
+				timestampedEntities.put(entity.getId(), (Timestamped) entity);
+		final List<Integer> ids = new ArrayList<>(timestampedEntities.keySet());
+		for(int from = 0; from < ids.size(); from += MAX_IN_LIST)
+		{
+			final List<Integer> chunk = ids.subList(from, Math.min(from + MAX_IN_LIST, ids.size()));
+			final Map<Integer, Date> currentTimestamps = lockEntities(entityManager, TypeManager.getImplClass(type), chunk);
+			for(final Integer id : chunk)
+			{
+				final Timestamped entity = timestampedEntities.get(id);
+				if(!currentTimestamps.containsKey(id))
+					throw new StaleEntityException(type.getSimpleName() + " id=" + id + " has been deleted");
+				final Date currentTimestamp = currentTimestamps.get(id);
+				if(!sameTimestamp(currentTimestamp, entity.getTimestamp()))
+					throw new StaleEntityException("Entity is out of synchronization: " + type.getSimpleName() + " id=" + id);
+				previousTimestamps.put(entity, entity.getTimestamp());
+				entity.setTimestamp(nextTimestamp(currentTimestamp));
+			}
 		}
 	}
+	
+	private static <X> Map<Integer, Date> lockEntities(final EntityManager entityManager, final Class<X> implType, final List<Integer> ids)
+	{
+		final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		final CriteriaQuery<X> query = cb.createQuery(implType);
+		final Root<X> root = query.from(implType);
+		query.select(root).where(root.get("id").in(ids));
+		final Map<Integer, Date> timestamps = new HashMap<>();
+		for(final X entity : applyDeadline(entityManager.createQuery(query)).setLockMode(LockModeType.PESSIMISTIC_WRITE).getResultList())
+			timestamps.put(((Readable) entity).getId(), ((Timestamped) entity).getTimestamp());
+		return timestamps;
+	}
+	
+	private static boolean sameTimestamp(final Date current, final Date expected)
+	{
+		if(current == null || expected == null)
+			return current == expected;
+		return current.getTime() / 1000 == expected.getTime() / 1000;
+	}
+	
+	private static Date nextTimestamp(final Date current)
+	{
+		final long now = System.currentTimeMillis() / 1000 * 1000;
+		if(current == null)
+			return new Date(now);
+		return new Date(Math.max(now, (current.getTime() / 1000 + 1) * 1000));
+	}
 
 	@Override
 	public void delete(final Writable entity) throws RoseException
@@ -303,31 +670,206 @@ final class PersistenceController implements ModelController
 			return;
 		LOGGER.warn("start deleting entity:\r\n" + EntityUtils.toStringFull(entity));
 		final Set<Writable> changedEntities = new LinkedHashSet<>();
-		synchronized (entityManager)
+		for(int i = 0; i < entity.getEntityCount(); i++)
 		{
-			for(int i = 0; i < entity.getEntityCount(); i++)
+			if(entity.getRelationType(i).isSecondMany())
+				for(final Readable subEntity : entity.getEntityValueMany(i))
+					if(subEntity != null)
+						changedEntities.add((Writable) subEntity);
+			else
+				if(entity.getEntityValueOne(i) != null)
+					changedEntities.add((Writable) entity.getEntityValueOne(i));
+		}
+		final int id = entity.getId();
+		final Map<Timestamped, Date> previousTimestamps = new HashMap<>();
+		final EntityManager entityManager = entityManagerPool.acquire();
+		try
+		{
+			final EntityTransaction transaction = entityManager.getTransaction();
+			transaction.begin();
+			for(final Map.Entry<Class<? extends Readable>, List<Writable>> typedEntities : groupByType(changedEntities).entrySet())
 			{
-				if(entity.getRelationType(i).isSecondMany())
-					for(final Readable subEntity : entity.getEntityValueMany(i))
-						if(subEntity != null)
-							changedEntities.add((Writable) subEntity);
-				else
-					if(entity.getEntityValueOne(i) != null)
-						changedEntities.add((Writable) entity.getEntityValueOne(i));
+				checkTimestamps(entityManager, typedEntities.getKey(), typedEntities.getValue(), previousTimestamps);
+				typedEntities.getValue().forEach(entityManager::merge);
 			}
-			update(changedEntities.toArray(new Writable[changedEntities.size()]));
-			try
+			entityManager.remove(entityManager.contains(entity) ? entity : entityManager.merge(entity));
+			transaction.commit();
+			tombstoneLog.record(TypeManager.getClass(entity), Collections.singleton(id));
+			healthCheck.recordSuccess();
+			LOGGER.debug("end deleting entity: " + EntityUtils.toStringSimple(entity));
+		}
+		catch(Exception e)
+		{
+			previousTimestamps.forEach(Timestamped::setTimestamp);
+			if(e instanceof StaleEntityException)
+				throw (StaleEntityException) e;
+			throw Deadline.translate(e, "error deleting " + entity);
+		}
+		finally
+		{
+			entityManagerPool.release(entityManager);
+		}
+	}
+
+	@Override
+	public void deleteAll(final Collection<? extends Writable> entities) throws RoseException
+	{
+		final EntityManager entityManager = entityManagerPool.acquire();
+		try
+		{
+			LOGGER.debug("start deleting " + entities.size() + " entities");
+			final EntityTransaction transaction = entityManager.getTransaction();
+			transaction.begin();
+			int count = 0;
+			final Map<Class<? extends Readable>, List<Integer>> deletedIds = new HashMap<>();
+			for(final Map.Entry<Class<? extends Readable>, ? extends List<? extends Writable>> entry : groupByType(entities).entrySet())
 			{
-				entityManager.remove(entity);
-				LOGGER.debug("end deleting entity: " + EntityUtils.toStringSimple(entity));
+				final List<Integer> ids = new ArrayList<>();
+				deletedIds.put(entry.getKey(), ids);
+				for(final Writable entity : entry.getValue())
+				{
+					if(entity.getId() < 0)
+						throw new RoseException("illegal id: " + entity.getId());
+					if(entityManager.contains(entity))
+						entityManager.detach(entity);
+					ids.add(entity.getId());
+				}
+				count += deleteByIds(entityManager, entry.getKey(), ids);
 			}
-			catch(Exception e)
-			{
-				throw new RoseException("error deleting " + entity, e);
-			}			
+			transaction.commit();
+			deletedIds.forEach(tombstoneLog::record);
+			healthCheck.recordSuccess();
+			LOGGER.debug("end deleting entities count=" + count);
+		}
+		catch(Exception e)
+		{
+			throw Deadline.translate(e, "error deleting entities");
+		}
+		finally
+		{
+			entityManagerPool.release(entityManager);
 		}
 	}
-
+	
+	@Override
+	public <T extends Writable> int deleteWhere(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		final String message = "deleting " + type.getSimpleName() + " where " + query;
+		final EntityManager entityManager = entityManagerPool.acquire();
+		try
+		{
+			LOGGER.warn("start " + message);
+			final EntityTransaction transaction = entityManager.getTransaction();
+			transaction.begin();
+			final List<Integer> ids = createTemplateQuery(entityManager, "ids", type, Integer.class, query, 
+					(cb, idQuery, root, parameters) -> idQuery.select(root.<Integer>get("id")))
+				.getResultList();
+			final int count = deleteByIds(entityManager, type, ids);
+			transaction.commit();
+			tombstoneLog.record(type, ids);
+			healthCheck.recordSuccess();
+			LOGGER.debug("end " + message + " count=" + count);
+			return count;
+		}
+		catch(Exception e)
+		{
+			throw Deadline.translate(e, "error " + message);
+		}
+		finally
+		{
+			entityManagerPool.release(entityManager);
+		}
+	}
+	
+	private int deleteByIds(final EntityManager entityManager, final Class<? extends Readable> type, final List<Integer> ids)
+	{
+		final Class<? extends Readable> entityType = TypeManager.convertType(type);
+		final EntityModel entityModel = TypeManager.getEntityModel(entityType);
+		final boolean hasJoinedRelations = entityModel.getEntityFields().stream()
+				.anyMatch(f -> f.getType() == RelationType.ONETOONE || f.getType() == RelationType.MANYTOMANY);
+		int count = 0;
+		for(int from = 0; from < ids.size(); from += MAX_IN_LIST)
+		{
+			final List<Integer> chunk = ids.subList(from, Math.min(from + MAX_IN_LIST, ids.size()));
+			detachManaged(entityManager, entityType, chunk);
+			for(final EntityModel referencingModel : TypeManager.getEntityModels())
+				for(final EntityField field : referencingModel.getEntityFields())
+					if(field.getType() == RelationType.MANYTOONE && TypeManager.getClass(field.getEntityModel()).equals(entityType))
+						nullifyReferences(entityManager, TypeManager.getImplClass(TypeManager.getClass(referencingModel)), field.getName(), chunk);
+			if(hasJoinedRelations)
+				unlinkJoinedRelations(entityManager, entityType, chunk);
+			count += bulkDelete(entityManager, TypeManager.getImplClass(entityType), chunk);
+		}
+		return count;
+	}
+	
+	private static <X> void nullifyReferences(final EntityManager entityManager, final Class<X> implType, final String fieldName, final List<Integer> ids)
+	{
+		final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		final CriteriaUpdate<X> update = cb.createCriteriaUpdate(implType);
+		final Root<X> root = update.from(implType);
+		setNull(cb, update, root.get(fieldName));
+		if(Timestamped.class.isAssignableFrom(implType))
+			update.set(root.<Date>get(TIMESTAMP), new Date());
+		update.where(root.get(fieldName).get("id").in(ids));
+		applyDeadline(entityManager.createQuery(update)).executeUpdate();
+	}
+	
+	private static <Y> void setNull(final CriteriaBuilder cb, final CriteriaUpdate<?> update, final Path<Y> path)
+	{
+		update.set(path, cb.nullLiteral(path.getJavaType()));
+	}
+	
+	private static <T extends Readable> void unlinkJoinedRelations(final EntityManager entityManager, final Class<T> type, final List<Integer> ids)
+	{
+		final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		final CriteriaQuery<T> query = cb.createQuery(type);
+		final Root<? extends T> root = query.from(TypeManager.getImplClass(type));
+		query.select(root).where(root.get("id").in(ids));
+		final List<T> entities = applyDeadline(entityManager.createQuery(query)).getResultList();
+		for(final T entity : entities)
+		{
+			final Writable writable = (Writable) entity;
+			for(int i = 0; i < writable.getEntityCount(); i++)
+				switch(writable.getRelationType(i))
+				{
+				case ONETOONE:
+					if(writable.getEntityValueOne(i) != null)
+						writable.setEntity(i, null);
+					break;
+				case MANYTOMANY:
+					for(final Readable related : new ArrayList<>(writable.getEntityValueMany(i)))
+						writable.removeEntity(i, (Writable) related);
+					break;
+				default:
+					break;
+				}
+		}
+		entityManager.flush();
+		entities.forEach(entityManager::detach);
+	}
+	
+	private static <X> int bulkDelete(final EntityManager entityManager, final Class<X> implType, final List<Integer> ids)
+	{
+		final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+		final CriteriaDelete<X> delete = cb.createCriteriaDelete(implType);
+		final Root<X> root = delete.from(implType);
+		delete.where(root.get("id").in(ids));
+		return applyDeadline(entityManager.createQuery(delete)).executeUpdate();
+	}
+	
+	private static void detachManaged(final EntityManager entityManager, final Class<? extends Readable> type, final List<Integer> ids)
+	{
+		final SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+		final EntityPersister persister = session.getFactory().getMetamodel().entityPersister(TypeManager.getImplClass(type));
+		for(final Integer id : ids)
+		{
+			final Object managed = session.getPersistenceContext().getEntity(session.generateEntityKey(id, persister));
+			if(managed != null)
+				entityManager.detach(managed);
+		}
+	}
+	
 	@Override
 	public <T extends Writable> T createNew(final Class<T> type) throws RoseException
 	{
@@ -338,40 +880,71 @@ final class PersistenceController implements ModelController
 	@Override
 	public <T extends Writable> T createNew(final T entity) throws RoseException
 	{
-		synchronized (entityManager)
+		final EntityManager entityManager = entityManagerPool.acquire();
+		try
 		{
 			LOGGER.debug("start creating " + TypeManager.getClass(entity).getSimpleName());
 			final EntityTransaction transaction = entityManager.getTransaction();
 			transaction.begin();
 			entityManager.persist(entity);
 			transaction.commit();
+			healthCheck.recordSuccess();
+		}
+		finally
+		{
+			entityManagerPool.release(entityManager);
 		}
 		LOGGER.debug("end creating: " + EntityUtils.toStringPrimitives(entity));
 		return entity;
 	}
 	
 	@Override
-	public Writable createCopy(final Writable entity) throws RoseException
+	public <T extends Writable> List<T> createAll(final Collection<T> entities) throws RoseException
+	{
+		return createAll(entities, false);
+	}
+	
+	<T extends Writable> List<T> createAll(final Collection<T> entities, final boolean assignedIds) throws RoseException
 	{
-		final Writable copy = createNew(entity.getClass());
-		for(int i = 0; i < copy.getFieldCount(); i++)
-			copy.setField( i, copy.getFieldValue(i));
-		for(int i = 0; i < copy.getEntityCount(); i++)
-			switch(copy.getRelationType(i))
+		final List<T> createdEntities = new ArrayList<>(entities.size());
+		final EntityManager entityManager = entityManagerPool.acquire();
+		try
+		{
+			LOGGER.debug("start creating " + entities.size() + " entities");
+			final EntityTransaction transaction = entityManager.getTransaction();
+			transaction.begin();
+			for(final T entity : entities)
 			{
-			case ONETOONE:
-				break;
-			case ONETOMANY:
-				for( Readable o : copy.getEntityValueMany(i) )
-					copy.addEntity( i, createCopy((Writable) o));
-				break;
-			case MANYTOONE:
-				copy.setEntity(i, (Writable) copy.getEntityValueOne(i));
-				break;
-			case MANYTOMANY:
-				break;
+				if(entity == null)
+					continue;
+				if(assignedIds)
+					entityManager.unwrap(Session.class).replicate(entity, ReplicationMode.EXCEPTION);
+				else
+					entityManager.persist(entity);
+				createdEntities.add(entity);
+				if(createdEntities.size() % batchSize == 0)
+					entityManager.flush();
 			}
-		return copy;
+			entityManager.flush();
+			transaction.commit();
+			healthCheck.recordSuccess();
+			LOGGER.debug("end creating " + createdEntities.size() + " entities");
+			return createdEntities;
+		}
+		catch(Exception e)
+		{
+			throw Deadline.translate(e, "error creating entities");
+		}
+		finally
+		{
+			entityManagerPool.release(entityManager);
+		}
+	}
+	
+	@Override
+	public Writable createCopy(final Writable entity) throws RoseException
+	{
+		return createDeepCopy(entity).getCopy();
 	}
 	
 	@Override
@@ -379,8 +952,8 @@ final class PersistenceController implements ModelController
 	{
 		try
 		{
-			entityManager.close();
-			checkDbConnectionThread.interrupt();
+			healthCheck.stop();
+			entityManagerPool.close();
 		}
 		catch(Exception e)
 		{
@@ -388,10 +961,84 @@ final class PersistenceController implements ModelController
 		}
 	}
 
-	private <T extends Readable> void transformQuery(final Map<String, String> queryParameters,
-			final Class<T> type, final CriteriaQuery<?> query, final Root<? extends T> root)
+	private <T extends Readable, R> TypedQuery<R> createTemplateQuery(final EntityManager entityManager, final String kind, 
+			final Class<T> type, final Class<R> resultType, final Map<String, String> queryParameters, final QueryDefinition<T, R> definition)
+	{
+		final QueryTemplate<R> template = queryTemplates.get(templateKey(kind, type, queryParameters), () -> {
+			final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+			final CriteriaQuery<R> query = cb.createQuery(resultType);
+			final Root<? extends T> root = query.from(TypeManager.getImplClass(type));
+			final QueryTemplate.Parameters parameters = new QueryTemplate.Parameters(cb);
+			transformQuery(cb, parameters, queryParameters, type, query, root);
+			definition.define(cb, query, root, parameters);
+			return QueryTemplate.compile(entityManager, query, parameters);
+		});
+		final TypedQuery<R> typedQuery = template.createQuery(entityManager, queryParameters);
+		if(secondLevelCache.isCached(type) && isPlainFilter(kind, queryParameters))
+			typedQuery.setHint(SecondLevelCache.HINT_CACHEABLE, true);
+		return applyDeadline(typedQuery);
+	}
+	
+	private static <Q extends Query> Q applyDeadline(final Q query)
+	{
+		deadlineHints().forEach(query::setHint);
+		return query;
+	}
+	
+	private static Map<String, Object> deadlineHints()
+	{
+		final Deadline deadline = Deadline.current();
+		if(deadline == null)
+			return Collections.emptyMap();
+		final long remaining = deadline.remainingMillis("executing query");
+		final long timeout = (remaining + 999L) / 1000L * 1000L;
+		return Collections.singletonMap(HINT_QUERY_TIMEOUT, (int) Math.min(Integer.MAX_VALUE, timeout));
+	}
+	
+	private static String templateKey(final String kind, final Class<? extends Readable> type, final Map<String, String> queryParameters)
+	{
+		final StringBuilder key = new StringBuilder(kind).append(':').append(type.getName());
+		for(final Map.Entry<String, String> entry : new TreeMap<>(queryParameters).entrySet())
+		{
+			key.append('|').append(entry.getKey());
+			final String structure = structure(entry.getKey(), entry.getValue());
+			if(structure != null)
+				key.append('=').append(structure);
+		}
+		if(getIntegerValue(FETCH_TIMESPAN) != Integer.MAX_VALUE)
+			key.append("|fetchTimeSpan");
+		return key.toString();
+	}
+	
+	private static String structure(final String queryKey, final String queryValue)
+	{
+		if(queryKey.equals("useOr") || queryKey.equals(FETCH) || queryKey.equals(EntityOrder.ORDER_BY))
+			return queryValue;
+		final FilterOperator operator = FilterOperator.of(queryKey);
+		return operator == null ? null : operator.structure(queryValue);
+	}
+	
+	private static void addFetches(final Root<?> root, final String fetchParameter)
+	{
+		final Map<String, FetchParent<?, ?>> fetches = new HashMap<>();
+		for(final String fetchPath : fetchParameter.split(","))
+		{
+			FetchParent<?, ?> parent = root;
+			String path = "";
+			for(final String relation : fetchPath.trim().split("\\."))
+			{
+				if(relation.isEmpty())
+					continue;
+				path = path + "." + relation;
+				final FetchParent<?, ?> currentParent = parent;
+				parent = fetches.computeIfAbsent(path, p -> currentParent.fetch(relation, JoinType.LEFT));
+			}
+		}
+	}
+
+	private <T extends Readable> void transformQuery(final CriteriaBuilder cb, final QueryTemplate.Parameters parameters, 
+			final Map<String, String> queryParameters, final Class<T> type, final CriteriaQuery<?> query, final Root<? extends T> root)
 	{
-		final CriteriaBuilder cb = entityManager.getCriteriaBuilder();
 		final EntityModel entityModel = TypeManager.getEntityModel(type);
 		final List<Predicate> predicates = new ArrayList<>();
 
@@ -399,59 +1046,227 @@ final class PersistenceController implements ModelController
 		{
 			final String name = field.getName();
 			if(queryParameters.containsKey(name))
-				predicates.add(cb.equal(root.get(name), EntityUtils.toEntityValue(field, queryParameters.get(name))));
-			else if(queryParameters.containsKey(name+"_like") &&
+			{
+				final Path<Object> path = root.get(name);
+				final Class<?> javaType = path.getJavaType();
+				predicates.add(cb.equal(path, parameters.add(javaType, q -> QueryTemplate.parseValue(javaType, q.get(name)))));
+			}
+			else if(queryParameters.containsKey(FilterOperator.LIKE.key(name)) &&
 					field instanceof PrimitiveField &&
 					((PrimitiveField)field).getType().getJavaType().equals(String.class))
-				predicates.add(cb.like(root.get(name), "%"+queryParameters.get(name+"_like")+"%"));
+				predicates.add(cb.like(root.<String>get(name), parameters.add(String.class, q -> "%" + q.get(FilterOperator.LIKE.key(name)) + "%")));
+			addOperators(cb, parameters, queryParameters, name, root.get(name), predicates);
 		}
+		addOperators(cb, parameters, queryParameters, "id", root.get("id"), predicates);
 		
 		for(final EntityField field : entityModel.getEntityFields())
 		{
 			final String name = field.getName();
 			if(queryParameters.containsKey(name))
-			{
-				final int id = Integer.parseInt(queryParameters.get(name));
-				predicates.add(cb.equal(root.join(name).get("id"), id));
-			}
+				predicates.add(cb.equal(root.join(name).get("id"), parameters.add(Integer.class, q -> Integer.parseInt(q.get(name)))));
 		}
 
+		final List<Predicate> restrictions = new ArrayList<>();
 		final boolean isOr = queryParameters.containsKey("useOr");
 		if(!predicates.isEmpty())
 		{
 			final Predicate[] array = predicates.toArray(new Predicate[predicates.size()]);
 			if(isOr)
-				query.where(cb.or(array));
+				restrictions.add(cb.or(array));
 			else
-				query.where(cb.and(array));
+				restrictions.add(cb.and(array));
 		}
 
 		int fetchTimeSpan = getIntegerValue(FETCH_TIMESPAN);
 		if(fetchTimeSpan != Integer.MAX_VALUE)
 		{
-			calendar.setTime(new Date());
-			calendar.add(Calendar.DATE, - fetchTimeSpan);
-			query.where(cb.greaterThanOrEqualTo(root.get(TIMESTAMP), calendar.getTime()));
+			restrictions.add(cb.greaterThanOrEqualTo(root.<Date>get(TIMESTAMP), 
+					parameters.add(Date.class, q -> fetchTimeSpanStart(getIntegerValue(FETCH_TIMESPAN)))));
 			LOGGER.debug("fetch entity age restriction: " + fetchTimeSpan + " days");
 		}
+		
+		if(queryParameters.containsKey(ChangeSet.MODIFIED_SINCE) && Timestamped.class.isAssignableFrom(type))
+		{
+			restrictions.add(cb.greaterThanOrEqualTo(root.<Date>get(TIMESTAMP), 
+					parameters.add(Date.class, q -> QueryTemplate.parseValue(Date.class, q.get(ChangeSet.MODIFIED_SINCE)))));
+		}
+		
+		if(queryParameters.containsKey(EntityPage.AFTER_ID))
+		{
+			final Expression<Integer> afterId = parameters.add(Integer.class, q -> Integer.parseInt(q.get(EntityPage.AFTER_ID)));
+			if(EntityOrder.isDescendingById(queryParameters))
+				restrictions.add(cb.lessThan(root.<Integer>get("id"), afterId));
+			else
+				restrictions.add(cb.greaterThan(root.<Integer>get("id"), afterId));
+		}
+		
+		if(!restrictions.isEmpty())
+			query.where(restrictions.toArray(new Predicate[restrictions.size()]));
+	}
+	
+	private static void addOperators(final CriteriaBuilder cb, final QueryTemplate.Parameters parameters, final Map<String, String> queryParameters, 
+			final String name, final Path<?> path, final List<Predicate> predicates)
+	{
+		final Class<?> javaType = path.getJavaType();
+		for(final FilterOperator operator : FilterOperator.COMPARISONS)
+		{
+			final String key = operator.key(name);
+			if(queryParameters.containsKey(key))
+				predicates.add(compare(cb, operator, path, parameters.add(javaType, q -> QueryTemplate.parseValue(javaType, q.get(key)))));
+		}
+		
+		final String inKey = FilterOperator.IN.key(name);
+		if(queryParameters.containsKey(inKey))
+		{
+			final int count = FilterOperator.splitValues(queryParameters.get(inKey)).size();
+			final Expression<?>[] values = new Expression<?>[count];
+			for(int i = 0; i < count; i++)
+			{
+				final int index = i;
+				values[i] = parameters.add(javaType, q -> QueryTemplate.parseValue(javaType, FilterOperator.splitValues(q.get(inKey)).get(index)));
+			}
+			predicates.add(path.in(values));
+		}
+		
+		final String betweenKey = FilterOperator.BETWEEN.key(name);
+		if(queryParameters.containsKey(betweenKey))
+			predicates.add(between(cb, path, 
+					parameters.add(javaType, q -> QueryTemplate.parseValue(javaType, FilterOperator.splitRange(q.get(betweenKey)).get(0))),
+					parameters.add(javaType, q -> QueryTemplate.parseValue(javaType, FilterOperator.splitRange(q.get(betweenKey)).get(1)))));
+		
+		final String nullKey = FilterOperator.NULL.key(name);
+		if(queryParameters.containsKey(nullKey))
+			predicates.add(Boolean.parseBoolean(queryParameters.get(nullKey)) ? cb.isNull(path) : cb.isNotNull(path));
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Predicate compare(final CriteriaBuilder cb, final FilterOperator operator, final Expression path, final Expression value)
+	{
+		switch(operator)
+		{
+		case GT:
+			return cb.greaterThan(path, value);
+		case GE:
+			return cb.greaterThanOrEqualTo(path, value);
+		case LT:
+			return cb.lessThan(path, value);
+		default:
+			return cb.lessThanOrEqualTo(path, value);
+		}
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Predicate between(final CriteriaBuilder cb, final Expression path, final Expression from, final Expression to)
+	{
+		return cb.between(path, from, to);
+	}
+	
+	private static final class EntityScroll<T extends Readable> implements Iterator<T>
+	{
+		private final Class<T> type;
+		private final ScrollableResults results;
+		private final EntityManager entityManager;
+		private final EntityManagerPool entityManagerPool;
+		
+		private Boolean hasNext = null;
+		private int count = 0;
+		
+		private EntityScroll(final Class<T> type, final ScrollableResults results, final EntityManager entityManager, final EntityManagerPool entityManagerPool)
+		{
+			this.type = type;
+			this.results = results;
+			this.entityManager = entityManager;
+			this.entityManagerPool = entityManagerPool;
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			if(hasNext == null)
+			{
+				entityManager.clear();
+				hasNext = results.next();
+			}
+			return hasNext;
+		}
+		
+		@Override
+		public T next()
+		{
+			if(!hasNext())
+				throw new NoSuchElementException();
+			hasNext = null;
+			count++;
+			return type.cast(results.get(0));
+		}
+		
+		private void close()
+		{
+			try
+			{
+				results.close();
+			}
+			finally
+			{
+				entityManagerPool.release(entityManager);
+				LOGGER.debug("end streaming " + type.getSimpleName() + " count=" + count);
+			}
+		}
+	}
+	
+	private static void initializeRelations(final Collection<? extends Readable> entities)
+	{
+		for(final Readable entity : entities)
+			for(int i = 0; i < entity.getEntityCount(); i++)
+				if(entity.getRelationType(i).isSecondMany())
+					Hibernate.initialize(entity.getEntityValueMany(i));
+				else
+					Hibernate.initialize(entity.getEntityValueOne(i));
+	}
+	
+	private static void flushBatch(final EntityManager entityManager)
+	{
+		entityManager.flush();
+		entityManager.clear();
+	}
+	
+	private static <T extends Readable> Map<Class<? extends Readable>, List<T>> groupByType(final Collection<T> entities)
+	{
+		final Map<Class<? extends Readable>, List<T>> entitiesByType = new LinkedHashMap<>();
+		for(final T entity : entities)
+			if(entity != null)
+				entitiesByType.computeIfAbsent(TypeManager.getClass(entity), t -> new ArrayList<>()).add(entity);
+		return entitiesByType;
+	}
+	
+	private static Date fetchTimeSpanStart(final int fetchTimeSpan)
+	{
+		final Calendar calendar = Calendar.getInstance();
+		calendar.add(Calendar.DATE, - fetchTimeSpan);
+		return calendar.getTime();
 	}
 	
 	public List<?> listQuery( final String query ) throws RoseException
 	{
 		try
 		{
-			synchronized (entityManager)
+			final EntityManager entityManager = entityManagerPool.acquire();
+			try
 			{
 				LOGGER.debug("start query \"" + query + "\"");
-				final List<?> list = entityManager.createNamedQuery(query).getResultList();
+				final List<?> list = applyDeadline(entityManager.createNamedQuery(query)).getResultList();
 				if(list == null)
 					return Collections.emptyList();
 				return list;
 			}
+			finally
+			{
+				entityManagerPool.release(entityManager);
+			}
 		}
 		catch(Exception e)
 		{
-			throw new RoseException("unable to execute query '" + query + "'", e);
+			throw Deadline.translate(e, "unable to execute query '" + query + "'");
 		}
 	}
 	
@@ -0,0 +1,306 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rose.model.EntityField;
+import bn.blaszczyk.rose.model.EntityModel;
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rose.model.Writable;
+import bn.blaszczyk.rosecommon.tools.TypeManager;
+
+import static bn.blaszczyk.rosecommon.tools.Preferences.*;
+import static bn.blaszczyk.rosecommon.tools.CommonPreference.*;
+
+final class QueryCacheDecorator extends AbstractControllerDecorator implements ModelController
+{
+	private static final Logger LOGGER = LogManager.getLogger(QueryCacheDecorator.class);
+
+	private static final String IDS = "ids";
+	private static final String COUNT = "count";
+	private static final String FETCH = "fetch";
+
+	private final int maxSize;
+
+	private final long timeToLive;
+
+	private final Map<QueryKey, CachedResult> results;
+
+	private long generation = 0;
+
+	QueryCacheDecorator(final ModelController controller)
+	{
+		super(controller);
+		maxSize = Math.max(1, getIntegerValue(QUERY_CACHE_SIZE));
+		timeToLive = getIntegerValue(QUERY_CACHE_TTL) * 1000L;
+		results = new LinkedHashMap<QueryKey, CachedResult>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<QueryKey, CachedResult> eldest)
+			{
+				return size() > maxSize;
+			}
+		};
+		LOGGER.info("query cache size=" + maxSize + " ttl=" + timeToLive + "ms");
+	}
+
+	@Override
+	public <T extends Readable> List<T> getEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		if(query.containsKey(FETCH))
+			return super.getEntities(type, query);
+		final QueryKey key = new QueryKey(IDS, type, query);
+		final long lookupGeneration = currentGeneration();
+		@SuppressWarnings("unchecked")
+		final List<Integer> ids = (List<Integer>) lookup(key);
+		if(ids == null)
+		{
+			final List<T> entities = super.getEntities(type, query);
+			store(key, lookupGeneration, entities.stream()
+					.map(Readable::getId)
+					.collect(Collectors.toList()));
+			return entities;
+		}
+		if(ids.isEmpty())
+			return new ArrayList<>();
+		final Map<Integer, T> entitiesById = super.getEntitiesByIds(type, ids).stream()
+				.collect(Collectors.toMap(Readable::getId, Function.identity(), (e1, e2) -> e1));
+		if(entitiesById.size() < ids.size())
+			invalidate(key);
+		return ids.stream()
+				.map(entitiesById::get)
+				.filter(e -> e != null)
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	public <T extends Readable> int getEntityCount(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		final QueryKey key = new QueryKey(COUNT, type, query);
+		final long lookupGeneration = currentGeneration();
+		final Integer count = (Integer) lookup(key);
+		if(count != null)
+			return count;
+		final int freshCount = super.getEntityCount(type, query);
+		store(key, lookupGeneration, freshCount);
+		return freshCount;
+	}
+
+	@Override
+	public <T extends Writable> T createNew(final Class<T> type) throws RoseException
+	{
+		try
+		{
+			return super.createNew(type);
+		}
+		finally
+		{
+			invalidate(Collections.singleton(TypeManager.convertType(type)));
+		}
+	}
+
+	@Override
+	public <T extends Writable> T createNew(final T entity) throws RoseException
+	{
+		try
+		{
+			return super.createNew(entity);
+		}
+		finally
+		{
+			invalidate(typesOf(Collections.singleton(entity)));
+		}
+	}
+
+	@Override
+	public <T extends Writable> List<T> createAll(final Collection<T> entities) throws RoseException
+	{
+		try
+		{
+			return super.createAll(entities);
+		}
+		finally
+		{
+			invalidate(typesOf(entities));
+		}
+	}
+
+	@Override
+	public Writable createCopy(final Writable entity) throws RoseException
+	{
+		return createDeepCopy(entity).getCopy();
+	}
+
+	@Override
+	public void update(final Writable... entities) throws RoseException
+	{
+		try
+		{
+			super.update(entities);
+		}
+		finally
+		{
+			invalidate(typesOf(Arrays.asList(entities)));
+		}
+	}
+
+	@Override
+	public void delete(final Writable entity) throws RoseException
+	{
+		try
+		{
+			super.delete(entity);
+		}
+		finally
+		{
+			invalidate(typesOf(Collections.singleton(entity)));
+		}
+	}
+
+	@Override
+	public void deleteAll(final Collection<? extends Writable> entities) throws RoseException
+	{
+		try
+		{
+			super.deleteAll(entities);
+		}
+		finally
+		{
+			invalidate(typesOf(entities));
+		}
+	}
+
+	@Override
+	public <T extends Writable> int deleteWhere(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		try
+		{
+			return super.deleteWhere(type, query);
+		}
+		finally
+		{
+			invalidate(Collections.singleton(TypeManager.convertType(type)));
+		}
+	}
+
+	private synchronized long currentGeneration()
+	{
+		return generation;
+	}
+
+	private synchronized Object lookup(final QueryKey key)
+	{
+		final CachedResult result = results.get(key);
+		if(result == null)
+			return null;
+		if(result.expires < System.currentTimeMillis())
+		{
+			results.remove(key);
+			return null;
+		}
+		return result.value;
+	}
+
+	private synchronized void store(final QueryKey key, final long lookupGeneration, final Object value)
+	{
+		if(lookupGeneration == generation)
+			results.put(key, new CachedResult(value, System.currentTimeMillis() + timeToLive));
+	}
+
+	private synchronized void invalidate(final QueryKey key)
+	{
+		results.remove(key);
+	}
+
+	private synchronized void invalidate(final Set<Class<? extends Readable>> writtenTypes)
+	{
+		if(writtenTypes.isEmpty())
+			return;
+		generation++;
+		final int size = results.size();
+		results.keySet().removeIf(key -> isAffected(key, writtenTypes));
+		LOGGER.debug("invalidated " + (size - results.size()) + " cached queries for " + writtenTypes);
+	}
+
+	private static boolean isAffected(final QueryKey key, final Set<Class<? extends Readable>> writtenTypes)
+	{
+		if(writtenTypes.contains(key.type))
+			return true;
+		final EntityModel entityModel = TypeManager.getEntityModel(key.type);
+		for(final EntityField field : entityModel.getEntityFields())
+			if(key.query.containsKey(field.getName()) && writtenTypes.contains(TypeManager.getClass(field.getEntityModel())))
+				return true;
+		return false;
+	}
+
+	private static Set<Class<? extends Readable>> typesOf(final Collection<? extends Readable> entities)
+	{
+		final Set<Class<? extends Readable>> types = new HashSet<>();
+		for(final Readable entity : entities)
+			if(entity != null)
+				types.add(TypeManager.getClass(entity));
+		return types;
+	}
+
+	private static final class CachedResult
+	{
+		private final Object value;
+		private final long expires;
+
+		private CachedResult(final Object value, final long expires)
+		{
+			this.value = value;
+			this.expires = expires;
+		}
+	}
+
+	private static final class QueryKey
+	{
+		private final String kind;
+		private final Class<? extends Readable> type;
+		private final SortedMap<String, String> query;
+
+		private QueryKey(final String kind, final Class<? extends Readable> type, final Map<String, String> query)
+		{
+			this.kind = kind;
+			this.type = TypeManager.convertType(type);
+			this.query = new TreeMap<>();
+			query.forEach((k, v) -> this.query.put(k.trim(), v == null ? null : v.trim()));
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return (kind.hashCode() * 31 + type.hashCode()) * 31 + query.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object obj)
+		{
+			if(this == obj)
+				return true;
+			if(!(obj instanceof QueryKey))
+				return false;
+			final QueryKey other = (QueryKey) obj;
+			return kind.equals(other.kind) && type.equals(other.type) && query.equals(other.query);
+		}
+	}
+
+}
@@ -0,0 +1,164 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.ParameterExpression;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import bn.blaszczyk.rose.RoseException;
+
+final class QueryTemplate<R>
+{
+	private static final Logger LOGGER = LogManager.getLogger(QueryTemplate.class);
+
+	@FunctionalInterface
+	interface ParameterValue
+	{
+		public Object of(final Map<String, String> queryParameters) throws RoseException;
+	}
+
+	static final class Parameters
+	{
+		private final CriteriaBuilder cb;
+		private final Map<String, ParameterValue> values = new LinkedHashMap<>();
+
+		Parameters(final CriteriaBuilder cb)
+		{
+			this.cb = cb;
+		}
+
+		@SuppressWarnings("unchecked")
+		<P> ParameterExpression<P> add(final Class<P> type, final ParameterValue value)
+		{
+			final String name = "p" + values.size();
+			values.put(name, value);
+			return cb.parameter((Class<P>) boxed(type), name);
+		}
+	}
+
+	static final class Cache
+	{
+		private final Map<String, QueryTemplate<?>> templates;
+
+		Cache(final int maxSize)
+		{
+			templates = Collections.synchronizedMap(new LinkedHashMap<String, QueryTemplate<?>>(16, 0.75f, true)
+			{
+				private static final long serialVersionUID = -2391837546871130541L;
+
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<String, QueryTemplate<?>> eldest)
+				{
+					return size() > maxSize;
+				}
+			});
+		}
+
+		@SuppressWarnings("unchecked")
+		<R> QueryTemplate<R> get(final String key, final Supplier<QueryTemplate<R>> compiler)
+		{
+			QueryTemplate<R> template = (QueryTemplate<R>) templates.get(key);
+			if(template == null)
+			{
+				template = compiler.get();
+				templates.put(key, template);
+				LOGGER.debug("compiled query template " + key + ": " + template.jpql);
+			}
+			return template;
+		}
+
+		void clear()
+		{
+			templates.clear();
+		}
+	}
+
+	static <R> QueryTemplate<R> compile(final EntityManager entityManager, final CriteriaQuery<R> criteriaQuery, final Parameters parameters)
+	{
+		final String jpql = entityManager.createQuery(criteriaQuery)
+				.unwrap(org.hibernate.query.Query.class)
+				.getQueryString();
+		return new QueryTemplate<>(jpql, criteriaQuery.getResultType(), parameters.values);
+	}
+
+	static Object parseValue(final Class<?> type, final String value) throws RoseException
+	{
+		if(value == null || value.equals("null"))
+			return null;
+		try
+		{
+			final Class<?> boxedType = boxed(type);
+			if(boxedType.equals(String.class))
+				return value;
+			if(boxedType.equals(Integer.class))
+				return Integer.valueOf(value.trim());
+			if(boxedType.equals(Long.class))
+				return Long.valueOf(value.trim());
+			if(boxedType.equals(BigDecimal.class))
+				return new BigDecimal(value.trim());
+			if(boxedType.equals(Boolean.class))
+				return Boolean.valueOf(value.trim());
+			if(Date.class.isAssignableFrom(boxedType))
+				return new Date(Long.parseLong(value.trim()));
+			if(boxedType.isEnum())
+				return parseEnum(boxedType, value.trim());
+		}
+		catch(Exception e)
+		{
+			throw RoseException.wrap(e, "error parsing '" + value + "' as " + type.getSimpleName());
+		}
+		throw new RoseException("unsupported query parameter type " + type.getName());
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Object parseEnum(final Class<?> type, final String value)
+	{
+		return Enum.valueOf((Class<? extends Enum>) type, value);
+	}
+
+	private static Class<?> boxed(final Class<?> type)
+	{
+		if(!type.isPrimitive())
+			return type;
+		if(type.equals(int.class))
+			return Integer.class;
+		if(type.equals(long.class))
+			return Long.class;
+		if(type.equals(boolean.class))
+			return Boolean.class;
+		if(type.equals(double.class))
+			return Double.class;
+		return type;
+	}
+
+	private final String jpql;
+	private final Class<R> resultType;
+	private final Map<String, ParameterValue> parameterValues;
+
+	private QueryTemplate(final String jpql, final Class<R> resultType, final Map<String, ParameterValue> parameterValues)
+	{
+		this.jpql = jpql;
+		this.resultType = resultType;
+		this.parameterValues = parameterValues;
+	}
+
+	TypedQuery<R> createQuery(final EntityManager entityManager, final Map<String, String> queryParameters) throws RoseException
+	{
+		final TypedQuery<R> query = entityManager.createQuery(jpql, resultType);
+		for(final Map.Entry<String, ParameterValue> parameterValue : parameterValues.entrySet())
+			query.setParameter(parameterValue.getKey(), parameterValue.getValue().of(queryParameters));
+		return query;
+	}
+
+}
@@ -0,0 +1,52 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.Arrays;
+
+import bn.blaszczyk.rose.RoseException;
+
+final class RangeShardRouter implements ShardRouter
+{
+	private final int[] rangeStarts;
+	
+	RangeShardRouter(final int... rangeStarts) throws RoseException
+	{
+		if(rangeStarts.length < 1)
+			throw new RoseException("no shard ranges");
+		for(int i = 1; i < rangeStarts.length; i++)
+			if(rangeStarts[i] <= rangeStarts[i - 1])
+				throw new RoseException("shard ranges not ascending: " + Arrays.toString(rangeStarts));
+		this.rangeStarts = rangeStarts.clone();
+	}
+	
+	@Override
+	public int getShardCount()
+	{
+		return rangeStarts.length;
+	}
+	
+	@Override
+	public int shardOf(final int id)
+	{
+		final int index = Arrays.binarySearch(rangeStarts, id);
+		if(index >= 0)
+			return index;
+		return Math.max(0, -index - 2);
+	}
+	
+	@Override
+	public int nextId(final int shard, final int after) throws RoseException
+	{
+		final long id = Math.max(after + 1L, shard == 0 ? 1L : rangeStarts[shard]);
+		final long end = shard + 1 < rangeStarts.length ? rangeStarts[shard + 1] : Integer.MAX_VALUE + 1L;
+		if(id >= end)
+			throw new RoseException("no ids left on shard " + shard + " for " + this);
+		return (int) id;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "ranges" + Arrays.toString(rangeStarts);
+	}
+	
+}
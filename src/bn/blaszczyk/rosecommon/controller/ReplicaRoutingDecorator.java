@@ -0,0 +1,251 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rose.model.Writable;
+import bn.blaszczyk.rosecommon.tools.CommonPreference;
+import bn.blaszczyk.rosecommon.tools.Preferences;
+
+final class ReplicaRoutingDecorator extends AbstractControllerDecorator implements ModelController
+{
+	private static final Logger LOGGER = LogManager.getLogger(ReplicaRoutingDecorator.class);
+	
+	@FunctionalInterface
+	private interface Read<R>
+	{
+		public R from(final ModelController controller) throws RoseException;
+	}
+	
+	private final List<ModelController> replicas;
+	
+	private final AtomicInteger[] activeReads;
+	
+	private final AtomicInteger nextReplica = new AtomicInteger();
+	
+	private final ThreadLocal<Long> lastWrite = new ThreadLocal<>();
+	
+	private final long stickiness;
+
+	ReplicaRoutingDecorator(final ModelController primary, final List<? extends ModelController> replicas)
+	{
+		super(primary);
+		this.replicas = new ArrayList<>(replicas);
+		activeReads = new AtomicInteger[replicas.size()];
+		for(int i = 0; i < activeReads.length; i++)
+			activeReads[i] = new AtomicInteger();
+		stickiness = Preferences.getIntegerValue(CommonPreference.DB_REPLICA_STICKINESS);
+		LOGGER.info("routing reads to " + replicas.size() + " replicas");
+	}
+	
+	@Override
+	public <T extends Readable> List<T> getEntities(final Class<T> type) throws RoseException
+	{
+		return read(c -> c.getEntities(type));
+	}
+	
+	@Override
+	public <T extends Readable> List<T> getEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		return read(c -> c.getEntities(type, query));
+	}
+	
+	@Override
+	public <T extends Readable> Stream<T> streamEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		final Read<Stream<T>> read = c -> c.streamEntities(type, query);
+		if(readsFromPrimary())
+			return read.from(controller);
+		final int index = selectReplica();
+		activeReads[index].incrementAndGet();
+		try
+		{
+			return read.from(replicas.get(index)).onClose(activeReads[index]::decrementAndGet);
+		}
+		catch(RoseException e)
+		{
+			activeReads[index].decrementAndGet();
+			return fallBack(index, e, read);
+		}
+		catch(RuntimeException e)
+		{
+			activeReads[index].decrementAndGet();
+			throw e;
+		}
+	}
+	
+	@Override
+	public <T extends Readable> List<Integer> getIds(final Class<T> type) throws RoseException
+	{
+		return read(c -> c.getIds(type));
+	}
+	
+	@Override
+	public <T extends Readable> Map<String, Object[]> getFieldValues(final Class<T> type, final List<String> fieldNames, final Map<String, String> query) throws RoseException
+	{
+		return read(c -> c.getFieldValues(type, fieldNames, query));
+	}
+	
+	@Override
+	public <T extends Readable> int getEntityCount(final Class<T> type) throws RoseException
+	{
+		return read(c -> c.getEntityCount(type));
+	}
+	
+	@Override
+	public <T extends Readable> int getEntityCount(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		return read(c -> c.getEntityCount(type, query));
+	}
+	
+	@Override
+	public <T extends Readable> List<Object[]> getAggregates(final Class<T> type, final Map<String, String> query, final List<String> groupBy, final Aggregate... aggregates) throws RoseException
+	{
+		return read(c -> c.getAggregates(type, query, groupBy, aggregates));
+	}
+	
+	@Override
+	public <T extends Readable> T getEntityById(final Class<T> type, final int id) throws RoseException
+	{
+		return read(c -> c.getEntityById(type, id));
+	}
+	
+	@Override
+	public <T extends Readable> List<T> getEntitiesByIds(final Class<T> type, final List<Integer> ids) throws RoseException
+	{
+		return read(c -> c.getEntitiesByIds(type, ids));
+	}
+	
+	@Override
+	public <T extends Writable> T createNew(final Class<T> type) throws RoseException
+	{
+		markWrite();
+		return super.createNew(type);
+	}
+	
+	@Override
+	public <T extends Writable> T createNew(final T entity) throws RoseException
+	{
+		markWrite();
+		return super.createNew(entity);
+	}
+	
+	@Override
+	public <T extends Writable> List<T> createAll(final Collection<T> entities) throws RoseException
+	{
+		markWrite();
+		return super.createAll(entities);
+	}
+	
+	@Override
+	public Writable createCopy(final Writable entity) throws RoseException
+	{
+		markWrite();
+		return super.createCopy(entity);
+	}
+	
+	@Override
+	public void update(final Writable... entities) throws RoseException
+	{
+		markWrite();
+		super.update(entities);
+	}
+	
+	@Override
+	public void delete(final Writable entity) throws RoseException
+	{
+		markWrite();
+		super.delete(entity);
+	}
+	
+	@Override
+	public void deleteAll(final Collection<? extends Writable> entities) throws RoseException
+	{
+		markWrite();
+		super.deleteAll(entities);
+	}
+	
+	@Override
+	public <T extends Writable> int deleteWhere(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		markWrite();
+		return super.deleteWhere(type, query);
+	}
+	
+	@Override
+	public void close() throws RoseException
+	{
+		for(final ModelController replica : replicas)
+			replica.close();
+		super.close();
+	}
+	
+	private void markWrite()
+	{
+		lastWrite.set(System.currentTimeMillis());
+	}
+	
+	private boolean readsFromPrimary()
+	{
+		if(replicas.isEmpty())
+			return true;
+		final Long lastWriteTime = lastWrite.get();
+		if(lastWriteTime == null)
+			return false;
+		if(System.currentTimeMillis() - lastWriteTime < stickiness)
+			return true;
+		lastWrite.remove();
+		return false;
+	}
+	
+	private int selectReplica()
+	{
+		final int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+		int selected = start;
+		for(int i = 1; i < replicas.size(); i++)
+		{
+			final int candidate = (start + i) % replicas.size();
+			if(activeReads[candidate].get() < activeReads[selected].get())
+				selected = candidate;
+		}
+		return selected;
+	}
+	
+	private <R> R read(final Read<R> read) throws RoseException
+	{
+		if(readsFromPrimary())
+			return read.from(controller);
+		final int index = selectReplica();
+		activeReads[index].incrementAndGet();
+		try
+		{
+			return read.from(replicas.get(index));
+		}
+		catch(RoseException e)
+		{
+			return fallBack(index, e, read);
+		}
+		finally
+		{
+			activeReads[index].decrementAndGet();
+		}
+	}
+	
+	private <R> R fallBack(final int index, final RoseException e, final Read<R> read) throws RoseException
+	{
+		if(e instanceof DeadlineExceededException || e instanceof StaleEntityException)
+			throw e;
+		LOGGER.warn("read from replica " + index + " failed; falling back to primary", e);
+		return read.from(controller);
+	}
+	
+}
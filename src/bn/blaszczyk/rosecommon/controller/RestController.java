@@ -1,18 +1,35 @@
 package bn.blaszczyk.rosecommon.controller;
 
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import bn.blaszczyk.rose.RoseException;
 import bn.blaszczyk.rose.model.Dto;
 import bn.blaszczyk.rose.model.DtoLinkType;
+import bn.blaszczyk.rose.model.EntityField;
+import bn.blaszczyk.rose.model.EntityModel;
+import bn.blaszczyk.rose.model.Field;
+import bn.blaszczyk.rose.model.PrimitiveField;
+import bn.blaszczyk.rose.model.PrimitiveType;
 import bn.blaszczyk.rose.model.Readable;
 import bn.blaszczyk.rose.model.Timestamped;
 import bn.blaszczyk.rose.model.Writable;
 import bn.blaszczyk.rosecommon.client.RoseClient;
+import bn.blaszczyk.rosecommon.dto.ChangeSetDto;
 import bn.blaszczyk.rosecommon.proxy.EntityAccess;
 import bn.blaszczyk.rosecommon.proxy.EntityAccessAdapter;
 import bn.blaszczyk.rosecommon.proxy.RoseProxy;
@@ -30,6 +47,7 @@ final class RestController implements ModelController
 	
 	private final RoseClient client;
 	private EntityAccess access;
+	private boolean isSharedAccess = false;
 	
 	RestController(final String host, final int port)
 	{
@@ -40,6 +58,7 @@ final class RestController implements ModelController
 	public void setEntityAccess(final EntityAccess access)
 	{
 		this.access = access;
+		this.isSharedAccess = true;
 	}
 	
 	@Override
@@ -55,15 +74,103 @@ final class RestController implements ModelController
 		final Map<String,String> fullQuery = new HashMap<>(query);
 		fullQuery.putAll(DTO_LINK_QUERY);
 		final List<Dto> dtos = client.getDtos(type, fullQuery);
+		if(query.containsKey("fetch") && isSharedAccess)
+			prefetch(type, dtos, query.get("fetch"));
 		return createProxys(dtos, type);
 	}
 	
+	<T extends Readable> CompletableFuture<List<T>> getEntitiesAsync(final Class<T> type, final Map<String, String> query, final Executor executor)
+	{
+		final Map<String,String> fullQuery = new HashMap<>(query);
+		fullQuery.putAll(DTO_LINK_QUERY);
+		return client.getDtosAsync(type, fullQuery)
+				.thenApplyAsync(dtos -> {
+					if(query.containsKey("fetch") && isSharedAccess)
+						prefetch(type, dtos, query.get("fetch"));
+					return createProxys(dtos, type);
+				}, executor);
+	}
+	
+	<T extends Readable> CompletableFuture<T> getEntityByIdAsync(final Class<T> type, final int id, final Executor executor)
+	{
+		return client.getDtoAsync(type, id, DTO_LINK_QUERY)
+				.thenApplyAsync(dto -> type.cast(RoseProxy.create(dto, access)), executor);
+	}
+	
+	<T extends Readable> CompletableFuture<List<Integer>> getIdsAsync(final Class<T> type)
+	{
+		return client.getIdsAsync(pathFor(type));
+	}
+	
+	<T extends Readable> CompletableFuture<Integer> getEntityCountAsync(final Class<T> type, final Map<String,String> query)
+	{
+		return client.getCountAsync(pathFor(type), query);
+	}
+	
+	@Override
+	public <T extends Readable> Stream<T> streamEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		final Map<String,String> fullQuery = new HashMap<>(query);
+		fullQuery.putAll(DTO_LINK_QUERY);
+		return client.streamDtos(type, fullQuery)
+				.map(dto -> type.cast(RoseProxy.create(dto, access)));
+	}
+	
 	@Override
 	public <T extends Readable> List<Integer> getIds(final Class<T> type) throws RoseException
 	{
 		return client.getIds(pathFor(type));
 	}
 	
+	@Override
+	public <T extends Readable> Map<String, Object[]> getFieldValues(final Class<T> type, final List<String> fieldNames, final Map<String, String> query) throws RoseException
+	{
+		final EntityModel entityModel = TypeManager.getEntityModel(type);
+		final Map<String, Object[]> dtoValues = client.getFieldValues(type, fieldNames, query);
+		final Map<String, Object[]> fieldValues = new LinkedHashMap<>();
+		for(final String fieldName : fieldNames)
+		{
+			final Object[] values = dtoValues.get(fieldName);
+			if(values == null)
+				throw new RoseException("missing field " + fieldName + " in response");
+			for(int i = 0; i < values.length; i++)
+				values[i] = fromDtoValue(entityModel, fieldName, values[i]);
+			fieldValues.put(fieldName, values);
+		}
+		return fieldValues;
+	}
+	
+	@Override
+	public <T extends Readable> List<Object[]> getAggregates(final Class<T> type, final Map<String, String> query, final List<String> groupBy, final Aggregate... aggregates) throws RoseException
+	{
+		final EntityModel entityModel = TypeManager.getEntityModel(type);
+		final List<String> aggregateNames = Arrays.stream(aggregates)
+				.map(Aggregate::toString)
+				.collect(Collectors.toList());
+		final List<Object[]> rows = client.getAggregates(type, query, groupBy, aggregateNames);
+		for(final Object[] row : rows)
+		{
+			if(row.length != groupBy.size() + aggregates.length)
+				throw new RoseException("invalid aggregate row " + Arrays.toString(row));
+			for(int i = 0; i < groupBy.size(); i++)
+				row[i] = fromDtoValue(entityModel, groupBy.get(i), row[i]);
+			for(int i = 0; i < aggregates.length; i++)
+				row[groupBy.size() + i] = fromAggregateValue(entityModel, aggregates[i], row[groupBy.size() + i]);
+		}
+		return rows;
+	}
+	
+	@Override
+	public <T extends Readable> ChangeSet<T> getEntitiesModifiedSince(final Class<T> type, final Date since) throws RoseException
+	{
+		final ChangeSetDto changes = client.getChanges(type, since, DTO_LINK_QUERY);
+		final List<T> modified = createProxys(changes.getEntities(), type);
+		final Date watermark = new Date(changes.getWatermark());
+		if(changes.isComplete())
+			return ChangeSet.complete(modified, watermark);
+		return ChangeSet.delta(modified, changes.getDeletedIds(), watermark);
+	}
+	
 	@Override
 	public <T extends Readable> int getEntityCount(final Class<T> type) throws RoseException
 	{
@@ -108,19 +215,34 @@ final class RestController implements ModelController
 		return entity;
 	}
 	
+	@Override
+	public <T extends Writable> List<T> createAll(final Collection<T> entities) throws RoseException
+	{
+		final List<T> createdEntities = new ArrayList<>(entities.size());
+		for(final T entity : entities)
+			createdEntities.add(createNew(entity));
+		return createdEntities;
+	}
+	
 	@Override
 	public Writable createCopy(final Writable entity) throws RoseException
 	{
-		final Dto dto = toDto(entity);
-		client.postDto(dto);
-		return entity;
+		return createDeepCopy(entity).getCopy();
 	}
 	
 	@Override
 	public void update(final Writable... entities) throws RoseException
 	{
 		for(final Writable entity : entities)
-			client.putDto(toDto(entity));
+			if(entity instanceof Timestamped && ((Timestamped)entity).getTimestamp() != null)
+			{
+				final Timestamped timestamped = (Timestamped) entity;
+				final String entityTag = client.putDto(toDto(entity), String.valueOf(timestamped.getTimestamp().getTime()));
+				if(entityTag != null)
+					timestamped.setTimestamp(new Date(Long.parseLong(entityTag)));
+			}
+			else
+				client.putDto(toDto(entity));
 	}
 	
 	@Override
@@ -143,6 +265,28 @@ final class RestController implements ModelController
 		return entities;
 	}
 
+	private void prefetch(final Class<? extends Readable> type, final List<Dto> dtos, final String fetchParameter) throws RoseException
+	{
+		final EntityModel entityModel = TypeManager.getEntityModel(type);
+		final Set<String> relations = new TreeSet<>();
+		for(final String fetchPath : fetchParameter.split(","))
+			relations.add(fetchPath.trim().split("\\.")[0]);
+		for(final EntityField field : entityModel.getEntityFields())
+		{
+			final String name = field.getName();
+			if(!relations.contains(name))
+				continue;
+			final Set<Integer> ids = new TreeSet<>();
+			for(final Dto dto : dtos)
+				if(field.getType().isSecondMany())
+					ids.addAll(Arrays.asList(dto.getEntityIds(name)));
+				else if(dto.getEntityId(name) >= 0)
+					ids.add(dto.getEntityId(name));
+			if(!ids.isEmpty())
+				access.getMany(TypeManager.getClass(field.getEntityModel()), new ArrayList<>(ids));
+		}
+	}
+
 	private <T extends Readable> String pathFor(final Class<T> type)
 	{
 		return type.getSimpleName().toLowerCase();
@@ -153,6 +297,50 @@ final class RestController implements ModelController
 		return entity.getEntityName().toLowerCase();
 	}
 	
+	private static Object fromDtoValue(final EntityModel entityModel, final String fieldName, final Object dtoValue)
+	{
+		final Field field = findField(entityModel, fieldName);
+		if(field == null)
+			return toId(dtoValue);
+		return EntityUtils.toEntityValue(field, dtoValue);
+	}
+	
+	private static Object fromAggregateValue(final EntityModel entityModel, final Aggregate aggregate, final Object dtoValue)
+	{
+		if(dtoValue == null)
+			return null;
+		switch(aggregate.getFunction())
+		{
+		case COUNT:
+			return ((Number) dtoValue).longValue();
+		case AVG:
+			return ((Number) dtoValue).doubleValue();
+		case SUM:
+			final Field field = findField(entityModel, aggregate.getFieldName());
+			if(field instanceof PrimitiveField && ((PrimitiveField) field).getType() == PrimitiveType.NUMERIC)
+				return new BigDecimal(dtoValue.toString());
+			return ((Number) dtoValue).longValue();
+		default:
+			return fromDtoValue(entityModel, aggregate.getFieldName(), dtoValue);
+		}
+	}
+	
+	private static Field findField(final EntityModel entityModel, final String fieldName)
+	{
+		return entityModel.getFields().stream()
+				.filter(f -> f.getName().equals(fieldName))
+				.findFirst()
+				.orElse(null);
+	}
+	
+	private static Integer toId(final Object dtoValue)
+	{
+		if(dtoValue == null)
+			return null;
+		final int id = dtoValue instanceof Number ? ((Number) dtoValue).intValue() : Integer.parseInt(dtoValue.toString().trim());
+		return id < 0 ? null : id;
+	}
+	
 	private static String commaSeparated(final List<?> list)
 	{
 		boolean first = true;
@@ -0,0 +1,289 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rose.model.EntityModel;
+import bn.blaszczyk.rose.model.Field;
+import bn.blaszczyk.rose.model.PrimitiveField;
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rose.model.Writable;
+import bn.blaszczyk.rosecommon.tools.EntityUtils;
+import bn.blaszczyk.rosecommon.tools.TypeManager;
+
+import static bn.blaszczyk.rosecommon.tools.Preferences.*;
+import static bn.blaszczyk.rosecommon.tools.CommonPreference.*;
+
+final class SearchIndexDecorator extends AbstractControllerDecorator implements ModelController
+{
+	private static final Logger LOGGER = LogManager.getLogger(SearchIndexDecorator.class);
+
+	private static final int MAX_CANDIDATES = 1000;
+
+	private static final String ID_IN = FilterOperator.IN.key("id");
+
+	private final Map<Class<? extends Readable>, List<String>> indexedFields = new HashMap<>();
+
+	private final Map<Class<? extends Readable>, Map<String, TrigramIndex>> indexes = new ConcurrentHashMap<>();
+
+	private final boolean exclusive = getBooleanValue(SEARCH_INDEX_EXCLUSIVE);
+
+	SearchIndexDecorator(final ModelController controller)
+	{
+		super(controller);
+		for(final EntityModel entityModel : TypeManager.getEntityModels())
+		{
+			final List<String> fieldNames = new ArrayList<>();
+			for(final String fieldName : getStringEntityValue(entityModel, SEARCH_INDEX_FIELDS).split(","))
+			{
+				if(fieldName.trim().isEmpty())
+					continue;
+				if(isStringField(entityModel, fieldName.trim()))
+					fieldNames.add(fieldName.trim());
+				else
+					LOGGER.warn("unable to index " + entityModel.getSimpleClassName() + "." + fieldName.trim() + "; no string field");
+			}
+			if(!fieldNames.isEmpty())
+				indexedFields.put(TypeManager.getClass(entityModel), fieldNames);
+		}
+	}
+
+	@Override
+	public <T extends Readable> List<T> getEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		final Set<Integer> ids = search(type, query);
+		if(ids == null)
+			return super.getEntities(type, query);
+		if(ids.isEmpty())
+			return new ArrayList<>();
+		return super.getEntities(type, narrow(query, ids));
+	}
+
+	@Override
+	public <T extends Readable> Stream<T> streamEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		final Set<Integer> ids = search(type, query);
+		if(ids == null)
+			return super.streamEntities(type, query);
+		if(ids.isEmpty())
+			return Stream.empty();
+		return super.streamEntities(type, narrow(query, ids));
+	}
+
+	@Override
+	public <T extends Readable> Map<String, Object[]> getFieldValues(final Class<T> type, final List<String> fieldNames, final Map<String, String> query) throws RoseException
+	{
+		final Set<Integer> ids = search(type, query);
+		if(ids == null || ids.isEmpty())
+			return super.getFieldValues(type, fieldNames, query);
+		return super.getFieldValues(type, fieldNames, narrow(query, ids));
+	}
+
+	@Override
+	public <T extends Readable> int getEntityCount(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		final Set<Integer> ids = search(type, query);
+		if(ids == null)
+			return super.getEntityCount(type, query);
+		if(ids.isEmpty())
+			return 0;
+		return super.getEntityCount(type, narrow(query, ids));
+	}
+
+	@Override
+	public <T extends Readable> List<Object[]> getAggregates(final Class<T> type, final Map<String, String> query, final List<String> groupBy, final Aggregate... aggregates) throws RoseException
+	{
+		final Set<Integer> ids = search(type, query);
+		if(ids == null || ids.isEmpty())
+			return super.getAggregates(type, query, groupBy, aggregates);
+		return super.getAggregates(type, narrow(query, ids), groupBy, aggregates);
+	}
+
+	@Override
+	public <T extends Writable> T createNew(final Class<T> type) throws RoseException
+	{
+		final T entity = super.createNew(type);
+		index(entity);
+		return entity;
+	}
+
+	@Override
+	public <T extends Writable> T createNew(final T entity) throws RoseException
+	{
+		final T created = super.createNew(entity);
+		index(created);
+		return created;
+	}
+
+	@Override
+	public <T extends Writable> List<T> createAll(final Collection<T> entities) throws RoseException
+	{
+		final List<T> created = super.createAll(entities);
+		created.forEach(this::index);
+		return created;
+	}
+
+	@Override
+	public Writable createCopy(final Writable entity) throws RoseException
+	{
+		return createDeepCopy(entity).getCopy();
+	}
+
+	@Override
+	public void update(final Writable... entities) throws RoseException
+	{
+		super.update(entities);
+		for(final Writable entity : entities)
+			if(entity != null)
+				index(entity);
+	}
+
+	@Override
+	public void delete(final Writable entity) throws RoseException
+	{
+		if(entity == null)
+		{
+			super.delete(entity);
+			return;
+		}
+		final Class<? extends Readable> type = TypeManager.getClass(entity);
+		final int id = entity.getId();
+		super.delete(entity);
+		unindex(type, id);
+	}
+
+	@Override
+	public void deleteAll(final Collection<? extends Writable> entities) throws RoseException
+	{
+		final Map<Class<? extends Readable>, List<Integer>> deletedIds = entities.stream()
+				.filter(e -> e != null)
+				.collect(Collectors.groupingBy(TypeManager::getClass, Collectors.mapping(Readable::getId, Collectors.toList())));
+		super.deleteAll(entities);
+		deletedIds.forEach((type, ids) -> ids.forEach(id -> unindex(type, id)));
+	}
+
+	@Override
+	public <T extends Writable> int deleteWhere(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		final Set<Integer> ids = search(type, query);
+		if(ids != null && ids.isEmpty())
+			return 0;
+		final int count = super.deleteWhere(type, ids == null ? query : narrow(query, ids));
+		if(count > 0)
+			indexes.remove(TypeManager.convertType(type));
+		return count;
+	}
+
+	private Set<Integer> search(final Class<? extends Readable> type, final Map<String, String> query) throws RoseException
+	{
+		final List<String> fieldNames = indexedFields.get(TypeManager.convertType(type));
+		if(!exclusive || fieldNames == null || query.containsKey("useOr"))
+			return null;
+		Set<Integer> candidates = null;
+		for(final String fieldName : fieldNames)
+		{
+			if(!isSearchable(query, fieldName))
+				continue;
+			final Set<Integer> ids = index(type, fieldName).search(query.get(FilterOperator.LIKE.key(fieldName)));
+			if(candidates == null)
+				candidates = ids;
+			else
+				candidates.retainAll(ids);
+		}
+		if(candidates == null)
+			return null;
+		if(query.containsKey(ID_IN))
+		{
+			final Set<Integer> requestedIds = new HashSet<>();
+			for(final String id : FilterOperator.splitValues(query.get(ID_IN)))
+				requestedIds.add(Integer.parseInt(id));
+			candidates.retainAll(requestedIds);
+		}
+		if(candidates.size() > MAX_CANDIDATES)
+			return null;
+		return candidates;
+	}
+
+	private static boolean isSearchable(final Map<String, String> query, final String fieldName)
+	{
+		final String pattern = query.get(FilterOperator.LIKE.key(fieldName));
+		return pattern != null && !query.containsKey(fieldName) && !pattern.contains("%") && !pattern.contains("_");
+	}
+
+	private static Map<String, String> narrow(final Map<String, String> query, final Set<Integer> ids)
+	{
+		final Map<String, String> narrowed = new HashMap<>(query);
+		final List<String> values = ids.stream()
+				.sorted()
+				.map(String::valueOf)
+				.collect(Collectors.toList());
+		final int paddedSize = Integer.highestOneBit(values.size() - 1) << 1;
+		while(values.size() < paddedSize)
+			values.add(values.get(values.size() - 1));
+		narrowed.put(ID_IN, String.join(",", values));
+		return narrowed;
+	}
+
+	private TrigramIndex index(final Class<? extends Readable> type, final String fieldName) throws RoseException
+	{
+		return indexes.computeIfAbsent(TypeManager.convertType(type), this::load).get(fieldName);
+	}
+
+	private Map<String, TrigramIndex> load(final Class<? extends Readable> type) throws RoseException
+	{
+		LOGGER.debug("start indexing " + type.getSimpleName());
+		final List<String> fieldNames = indexedFields.get(type);
+		final List<String> selection = new ArrayList<>(fieldNames.size() + 1);
+		selection.add("id");
+		selection.addAll(fieldNames);
+		final Map<String, Object[]> fieldValues = controller.getFieldValues(type, selection, new HashMap<>());
+		final Object[] ids = fieldValues.get("id");
+		final Map<String, TrigramIndex> typeIndexes = new HashMap<>();
+		for(final String fieldName : fieldNames)
+		{
+			final TrigramIndex index = new TrigramIndex();
+			final Object[] values = fieldValues.get(fieldName);
+			for(int i = 0; i < ids.length; i++)
+				index.put(((Number) ids[i]).intValue(), values[i]);
+			typeIndexes.put(fieldName, index);
+		}
+		LOGGER.debug("end indexing " + type.getSimpleName() + " count=" + ids.length);
+		return typeIndexes;
+	}
+
+	private void index(final Readable entity)
+	{
+		final Map<String, TrigramIndex> typeIndexes = indexes.get(TypeManager.getClass(entity));
+		if(typeIndexes == null)
+			return;
+		typeIndexes.forEach((fieldName, index) -> index.put(entity.getId(), EntityUtils.getFieldValue(entity, fieldName)));
+	}
+
+	private void unindex(final Class<? extends Readable> type, final int id)
+	{
+		final Map<String, TrigramIndex> typeIndexes = indexes.get(type);
+		if(typeIndexes != null)
+			typeIndexes.values().forEach(index -> index.remove(id));
+	}
+
+	private static boolean isStringField(final EntityModel entityModel, final String fieldName)
+	{
+		for(final Field field : entityModel.getFields())
+			if(field.getName().equals(fieldName))
+				return field instanceof PrimitiveField && ((PrimitiveField) field).getType().getJavaType().equals(String.class);
+		return false;
+	}
+
+}
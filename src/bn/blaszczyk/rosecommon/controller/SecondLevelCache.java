@@ -0,0 +1,99 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import static bn.blaszczyk.rosecommon.tools.CommonPreference.*;
+import static bn.blaszczyk.rosecommon.tools.Preferences.*;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ehcache.config.CacheConfiguration;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.expiry.Duration;
+import org.ehcache.expiry.Expirations;
+import org.ehcache.expiry.Expiry;
+import org.ehcache.jsr107.Eh107Configuration;
+
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rosecommon.tools.TypeManager;
+
+final class SecondLevelCache
+{
+	private static final Logger LOGGER = LogManager.getLogger(SecondLevelCache.class);
+	
+	private static final String CACHING_PROVIDER = "org.ehcache.jsr107.EhcacheCachingProvider";
+	private static final String REGION_FACTORY = "org.hibernate.cache.jcache.JCacheRegionFactory";
+	
+	private static final String KEY_USE_SECOND_LEVEL_CACHE = "hibernate.cache.use_second_level_cache";
+	private static final String KEY_USE_QUERY_CACHE = "hibernate.cache.use_query_cache";
+	private static final String KEY_REGION_FACTORY = "hibernate.cache.region.factory_class";
+	private static final String KEY_REGION_PREFIX = "hibernate.cache.region_prefix";
+	private static final String KEY_CACHING_PROVIDER = "hibernate.javax.cache.provider";
+	private static final String KEY_CLASS_CACHE_PREFIX = "hibernate.classcache.";
+	
+	private static final String QUERY_REGION = "org.hibernate.cache.internal.StandardQueryCache";
+	private static final String TIMESTAMPS_REGION = "org.hibernate.cache.spi.UpdateTimestampsCache";
+	private static final int TIMESTAMPS_PER_TYPE = 4;
+	
+	static final String HINT_CACHEABLE = "org.hibernate.cacheable";
+	
+	private final Set<Class<? extends Readable>> cachedTypes = new HashSet<>();
+	
+	SecondLevelCache(final Map<String, String> properties, final String regionPrefix)
+	{
+		if(!getBooleanValue(DB_SECOND_LEVEL_CACHE))
+			return;
+		properties.putIfAbsent(KEY_USE_SECOND_LEVEL_CACHE, "true");
+		properties.putIfAbsent(KEY_REGION_FACTORY, REGION_FACTORY);
+		properties.putIfAbsent(KEY_CACHING_PROVIDER, CACHING_PROVIDER);
+		properties.putIfAbsent(KEY_REGION_PREFIX, regionPrefix);
+		final String prefix = properties.get(KEY_REGION_PREFIX) + ".";
+		final CacheManager cacheManager = Caching.getCachingProvider(CACHING_PROVIDER).getCacheManager();
+		long querySize = 0;
+		int queryTimeToLive = Integer.MAX_VALUE;
+		for(final Class<? extends Readable> type : TypeManager.getEntityClasses())
+		{
+			if(!getBooleanEntityValue(type, SECOND_LEVEL_CACHE))
+				continue;
+			final String region = TypeManager.getImplClass(type).getName();
+			final int timeToLive = getIntegerEntityValue(type, SECOND_LEVEL_CACHE_TTL);
+			final int size = getIntegerEntityValue(type, SECOND_LEVEL_CACHE_SIZE);
+			createCache(cacheManager, prefix + region, size, Expirations.timeToLiveExpiration(Duration.of(timeToLive, TimeUnit.SECONDS)));
+			properties.putIfAbsent(KEY_CLASS_CACHE_PREFIX + region, "read-write," + region);
+			cachedTypes.add(type);
+			querySize += size;
+			queryTimeToLive = Math.min(queryTimeToLive, timeToLive);
+			LOGGER.info("second level cache for " + type.getSimpleName() + " ttl=" + timeToLive + "s size=" + size);
+		}
+		if(cachedTypes.isEmpty())
+			return;
+		properties.putIfAbsent(KEY_USE_QUERY_CACHE, "true");
+		createCache(cacheManager, prefix + QUERY_REGION, querySize, Expirations.timeToLiveExpiration(Duration.of(queryTimeToLive, TimeUnit.SECONDS)));
+		createCache(cacheManager, prefix + TIMESTAMPS_REGION, TIMESTAMPS_PER_TYPE * TypeManager.getEntityClasses().size(), Expirations.noExpiration());
+		LOGGER.info("query cache " + prefix + " ttl=" + queryTimeToLive + "s size=" + querySize);
+	}
+	
+	private static void createCache(final CacheManager cacheManager, final String name, final long size, final Expiry<Object, Object> expiry)
+	{
+		if(cacheManager.getCache(name) != null)
+			return;
+		final CacheConfiguration<Object, Object> configuration = CacheConfigurationBuilder
+				.newCacheConfigurationBuilder(Object.class, Object.class, ResourcePoolsBuilder.heap(size))
+				.withExpiry(expiry)
+				.build();
+		cacheManager.createCache(name, Eh107Configuration.fromEhcacheCacheConfiguration(configuration));
+	}
+	
+	boolean isCached(final Class<? extends Readable> type)
+	{
+		return cachedTypes.contains(TypeManager.convertType(type));
+	}
+
+}
@@ -0,0 +1,23 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import bn.blaszczyk.rose.RoseException;
+
+public interface ShardRouter
+{
+	public static ShardRouter hash(final int shardCount) throws RoseException
+	{
+		return new HashShardRouter(shardCount);
+	}
+	
+	public static ShardRouter ranges(final int... rangeStarts) throws RoseException
+	{
+		return new RangeShardRouter(rangeStarts);
+	}
+	
+	public int getShardCount();
+	
+	public int shardOf(final int id);
+	
+	public int nextId(final int shard, final int after) throws RoseException;
+	
+}
@@ -0,0 +1,372 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.Hibernate;
+
+import bn.blaszczyk.rose.RoseException;
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rose.model.Writable;
+import bn.blaszczyk.rosecommon.tools.EntityUtils;
+import bn.blaszczyk.rosecommon.tools.TypeManager;
+
+final class ShardingController implements ModelController
+{
+	private static final Logger LOGGER = LogManager.getLogger(ShardingController.class);
+
+	@FunctionalInterface
+	private interface ShardCall<R>
+	{
+		public R on(final ModelController shard, final int index) throws RoseException;
+	}
+
+	private final ShardRouter router;
+
+	private final List<ModelController> shards;
+
+	private final List<Integer> allShards;
+
+	private final ExecutorService executor;
+
+	private final AtomicInteger nextShard = new AtomicInteger();
+
+	private final Map<Class<? extends Readable>, int[]> lastIds = new HashMap<>();
+
+	ShardingController(final ShardRouter router, final List<? extends ModelController> shards) throws RoseException
+	{
+		if(shards.size() != router.getShardCount())
+			throw new RoseException("shard router " + router + " expects " + router.getShardCount() + " shards; got " + shards.size());
+		this.router = router;
+		this.shards = new ArrayList<>(shards);
+		allShards = IntStream.range(0, shards.size()).boxed().collect(Collectors.toList());
+		final AtomicInteger count = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(shards.size(), r -> {
+			final Thread thread = new Thread(r, "shard-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		LOGGER.info("routing " + router + " across " + shards.size() + " shards");
+	}
+
+	@Override
+	public <T extends Readable> List<T> getEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		final Map<String, String> shardQuery = shardQuery(query);
+		final List<List<T>> results = scatter(allShards, (s, i) -> s.getEntities(type, shardQuery));
+		return EntityOrder.select(results.stream().flatMap(List::stream), query);
+	}
+
+	@Override
+	public <T extends Readable> List<Integer> getIds(final Class<T> type) throws RoseException
+	{
+		return scatter(allShards, (s, i) -> s.getIds(type)).stream()
+				.flatMap(List::stream)
+				.sorted()
+				.collect(Collectors.toList());
+	}
+
+	@Override
+	public <T extends Readable> Map<String, Object[]> getFieldValues(final Class<T> type, final List<String> fieldNames, final Map<String, String> query) throws RoseException
+	{
+		if(query.keySet().stream().anyMatch(k -> EntityOrder.isLimitKey(k) || k.equals(EntityPage.AFTER_ID)))
+			return EntityUtils.toFieldValues(getEntities(type, query), fieldNames);
+		final List<Map<String, Object[]>> results = scatter(allShards, (s, i) -> s.getFieldValues(type, fieldNames, query));
+		final Map<String, Object[]> fieldValues = new LinkedHashMap<>();
+		for(final String fieldName : results.get(0).keySet())
+			fieldValues.put(fieldName, results.stream().flatMap(r -> Arrays.stream(r.get(fieldName))).toArray());
+		return fieldValues;
+	}
+
+	@Override
+	public <T extends Readable> int getEntityCount(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		return scatter(allShards, (s, i) -> s.getEntityCount(type, query)).stream()
+				.mapToInt(Integer::intValue)
+				.sum();
+	}
+
+	@Override
+	public <T extends Readable> ChangeSet<T> getEntitiesModifiedSince(final Class<T> type, final Date since) throws RoseException
+	{
+		final List<ChangeSet<T>> changeSets = scatter(allShards, (s, i) -> s.getEntitiesModifiedSince(type, since));
+		final Date watermark = changeSets.stream().map(ChangeSet::getWatermark).min(Date::compareTo).get();
+		if(changeSets.stream().allMatch(c -> !c.isComplete()))
+			return ChangeSet.delta(
+					changeSets.stream().flatMap(c -> c.getModified().stream()).collect(Collectors.toList()),
+					changeSets.stream().flatMap(c -> c.getDeletedIds().stream()).collect(Collectors.toList()),
+					watermark);
+		final List<List<T>> entities = scatter(allShards, (s, i) -> changeSets.get(i).isComplete() ? changeSets.get(i).getModified() : s.getEntities(type));
+		return ChangeSet.complete(entities.stream().flatMap(List::stream).collect(Collectors.toList()), watermark);
+	}
+
+	@Override
+	public <T extends Readable> T getEntityById(final Class<T> type, final int id) throws RoseException
+	{
+		return shards.get(router.shardOf(id)).getEntityById(type, id);
+	}
+
+	@Override
+	public <T extends Readable> List<T> getEntitiesByIds(final Class<T> type, final List<Integer> ids) throws RoseException
+	{
+		final Map<Integer, List<Integer>> idsByShard = new TreeMap<>();
+		for(final Integer id : new LinkedHashSet<>(ids))
+			idsByShard.computeIfAbsent(router.shardOf(id), s -> new ArrayList<>()).add(id);
+		final Map<Integer, T> entities = new HashMap<>();
+		for(final List<T> result : scatter(idsByShard.keySet(), (s, i) -> s.getEntitiesByIds(type, idsByShard.get(i))))
+			for(final T entity : result)
+				entities.put(entity.getId(), entity);
+		final List<T> ordered = new ArrayList<>(entities.size());
+		for(final Integer id : new LinkedHashSet<>(ids))
+			if(entities.containsKey(id))
+				ordered.add(entities.get(id));
+		return ordered;
+	}
+
+	@Override
+	public <T extends Writable> T createNew(final Class<T> type) throws RoseException
+	{
+		return createNew(TypeManager.newInstance(type));
+	}
+
+	@Override
+	public <T extends Writable> T createNew(final T entity) throws RoseException
+	{
+		return createAll(Collections.singleton(entity)).get(0);
+	}
+
+	@Override
+	public <T extends Writable> List<T> createAll(final Collection<T> entities) throws RoseException
+	{
+		final int shard = shardFor(entities);
+		final ModelController controller = shards.get(shard);
+		if(controller instanceof PersistenceController)
+			return createWithIds((PersistenceController) controller, shard, entities);
+		final List<T> created = controller.createAll(entities);
+		try
+		{
+			created.forEach(e -> checkAllocation(shard, e));
+		}
+		catch(RoseException e)
+		{
+			controller.deleteAll(created);
+			throw e;
+		}
+		return created;
+	}
+
+	@Override
+	public Writable createCopy(final Writable entity) throws RoseException
+	{
+		return createDeepCopy(entity).getCopy();
+	}
+
+	@Override
+	public void update(final Writable... entities) throws RoseException
+	{
+		final Map<Integer, List<Writable>> entitiesByShard = groupByShard(Arrays.asList(entities));
+		for(final Map.Entry<Integer, List<Writable>> entry : entitiesByShard.entrySet())
+			for(final Writable entity : entry.getValue())
+				for(final int relatedShard : relatedShards(entity))
+					if(relatedShard != entry.getKey())
+						throw new RoseException(TypeManager.getClass(entity).getSimpleName() + " with id " + entity.getId() + " on shard "
+								+ entry.getKey() + " references an entity on shard " + relatedShard);
+		scatter(entitiesByShard.keySet(), (s, i) -> {
+			final List<Writable> shardEntities = entitiesByShard.get(i);
+			s.update(shardEntities.toArray(new Writable[shardEntities.size()]));
+			return null;
+		});
+	}
+
+	@Override
+	public void delete(final Writable entity) throws RoseException
+	{
+		if(entity == null)
+			return;
+		shards.get(router.shardOf(entity.getId())).delete(entity);
+	}
+
+	@Override
+	public void deleteAll(final Collection<? extends Writable> entities) throws RoseException
+	{
+		final Map<Integer, List<Writable>> entitiesByShard = groupByShard(entities);
+		scatter(entitiesByShard.keySet(), (s, i) -> {
+			s.deleteAll(entitiesByShard.get(i));
+			return null;
+		});
+	}
+
+	@Override
+	public <T extends Writable> int deleteWhere(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		return scatter(allShards, (s, i) -> s.deleteWhere(type, query)).stream()
+				.mapToInt(Integer::intValue)
+				.sum();
+	}
+
+	@Override
+	public void close() throws RoseException
+	{
+		executor.shutdown();
+		for(final ModelController shard : shards)
+			shard.close();
+	}
+
+	private int nextShard()
+	{
+		return Math.floorMod(nextShard.getAndIncrement(), shards.size());
+	}
+
+	private <T extends Writable> List<T> createWithIds(final PersistenceController controller, final int shard, final Collection<T> entities) throws RoseException
+	{
+		final Map<T, Integer> previousIds = new IdentityHashMap<>();
+		try
+		{
+			for(final T entity : entities)
+				if(entity != null)
+				{
+					previousIds.put(entity, entity.getId());
+					entity.setId(allocateId(controller, TypeManager.getClass(entity), shard));
+				}
+			return controller.createAll(entities, true);
+		}
+		catch(RoseException e)
+		{
+			previousIds.forEach(Writable::setId);
+			throw e;
+		}
+	}
+
+	private synchronized int allocateId(final ModelController controller, final Class<? extends Readable> type, final int shard) throws RoseException
+	{
+		int[] typeIds = lastIds.get(type);
+		if(typeIds == null)
+		{
+			typeIds = new int[shards.size()];
+			Arrays.fill(typeIds, -1);
+			lastIds.put(type, typeIds);
+		}
+		if(typeIds[shard] < 0)
+			typeIds[shard] = maxId(controller, type);
+		typeIds[shard] = router.nextId(shard, typeIds[shard]);
+		return typeIds[shard];
+	}
+
+	private static int maxId(final ModelController controller, final Class<? extends Readable> type) throws RoseException
+	{
+		final Object max = controller.getAggregates(type, Collections.emptyMap(), Collections.emptyList(), Aggregate.max("id")).get(0)[0];
+		return max == null ? 0 : ((Number) max).intValue();
+	}
+
+	private int shardFor(final Collection<? extends Readable> entities) throws RoseException
+	{
+		int shard = -1;
+		for(final Readable entity : entities)
+			for(final int relatedShard : relatedShards(entity))
+				if(shard < 0)
+					shard = relatedShard;
+				else if(shard != relatedShard)
+					throw new RoseException("entities reference entities on shards " + shard + " and " + relatedShard);
+		return shard < 0 ? nextShard() : shard;
+	}
+	
+	private Set<Integer> relatedShards(final Readable entity)
+	{
+		final Set<Integer> relatedShards = new TreeSet<>();
+		if(entity == null)
+			return relatedShards;
+		for(int i = 0; i < entity.getEntityCount(); i++)
+			if(!entity.getRelationType(i).isSecondMany())
+				addShard(relatedShards, entity.getEntityValueOne(i));
+			else if(entity.getEntityValueMany(i) != null && Hibernate.isInitialized(entity.getEntityValueMany(i)))
+				for(final Readable relatedEntity : entity.getEntityValueMany(i))
+					addShard(relatedShards, relatedEntity);
+		return relatedShards;
+	}
+	
+	private void addShard(final Set<Integer> relatedShards, final Readable relatedEntity)
+	{
+		if(relatedEntity != null && relatedEntity.getId() > 0)
+			relatedShards.add(router.shardOf(relatedEntity.getId()));
+	}
+
+	private <T extends Readable> T checkAllocation(final int shard, final T entity) throws RoseException
+	{
+		final int owner = router.shardOf(entity.getId());
+		if(owner != shard)
+			throw new RoseException("id " + entity.getId() + " of " + TypeManager.getClass(entity).getSimpleName() + " allocated on shard "
+					+ shard + " belongs to shard " + owner + " for " + router + "; check the id sequences of the shards");
+		return entity;
+	}
+
+	private Map<Integer, List<Writable>> groupByShard(final Collection<? extends Writable> entities)
+	{
+		final Map<Integer, List<Writable>> entitiesByShard = new TreeMap<>();
+		for(final Writable entity : entities)
+			if(entity != null)
+				entitiesByShard.computeIfAbsent(router.shardOf(entity.getId()), s -> new ArrayList<>()).add(entity);
+		return entitiesByShard;
+	}
+
+	private static Map<String, String> shardQuery(final Map<String, String> query)
+	{
+		if(!query.containsKey(EntityOrder.FIRST_RESULT))
+			return query;
+		final Map<String, String> shardQuery = new HashMap<>(query);
+		final long firstResult = Long.parseLong(shardQuery.remove(EntityOrder.FIRST_RESULT));
+		for(final String key : Arrays.asList(EntityOrder.MAX_RESULTS, EntityPage.PAGE_SIZE))
+			if(shardQuery.containsKey(key))
+				shardQuery.put(key, String.valueOf(Math.min(Integer.MAX_VALUE, firstResult + Long.parseLong(shardQuery.get(key)))));
+		return shardQuery;
+	}
+
+	private <R> List<R> scatter(final Collection<Integer> indices, final ShardCall<R> call) throws RoseException
+	{
+		if(indices.size() == 1)
+		{
+			final int index = indices.iterator().next();
+			return Collections.singletonList(call.on(shards.get(index), index));
+		}
+		final Deadline deadline = Deadline.current();
+		final List<CompletableFuture<R>> futures = new ArrayList<>(indices.size());
+		for(final int index : indices)
+		{
+			final Supplier<R> task = () -> call.on(shards.get(index), index);
+			futures.add(CompletableFuture.supplyAsync(deadline == null ? task : () -> deadline.call(task), executor));
+		}
+		final List<R> results = new ArrayList<>(futures.size());
+		try
+		{
+			for(final CompletableFuture<R> future : futures)
+				results.add(future.join());
+		}
+		catch(CompletionException e)
+		{
+			throw Deadline.translate(e.getCause(), "error querying shards");
+		}
+		return results;
+	}
+
+}
@@ -0,0 +1,14 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import bn.blaszczyk.rose.RoseException;
+
+public class StaleEntityException extends RoseException
+{
+	private static final long serialVersionUID = -4785326107693461942L;
+
+	public StaleEntityException(final String message)
+	{
+		super(message);
+	}
+
+}
@@ -1,7 +1,14 @@
 package bn.blaszczyk.rosecommon.controller;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
 
 import bn.blaszczyk.rose.RoseException;
 import bn.blaszczyk.rose.model.Readable;
@@ -10,126 +17,328 @@ import bn.blaszczyk.rose.model.Writable;
 final class SynchronizingDecorator extends AbstractControllerDecorator implements ModelController
 {
 	
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	private final Lock readLock = lock.readLock();
+	
+	private final Lock writeLock = lock.writeLock();
+	
 	SynchronizingDecorator(final ModelController controller)
 	{
 		super(controller);
 	}
 	
+	private static void acquire(final Lock lock) throws RoseException
+	{
+		final Deadline deadline = Deadline.current();
+		if(deadline == null)
+		{
+			lock.lock();
+			return;
+		}
+		try
+		{
+			if(!lock.tryLock(deadline.remainingMillis("waiting for controller"), TimeUnit.MILLISECONDS))
+				throw new DeadlineExceededException("deadline exceeded while waiting for controller");
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new RoseException("interrupted while waiting for controller", e);
+		}
+	}
+	
 	@Override
 	public <T extends Readable> List<T> getEntities(final Class<T> type) throws RoseException
 	{
-		synchronized (controller)
+		acquire(readLock);
+		try
 		{
 			return controller.getEntities(type);
 		}
+		finally
+		{
+			readLock.unlock();
+		}
 	}
 	
 	@Override
 	public <T extends Readable> List<T> getEntities(final Class<T> type, final Map<String, String> query) throws RoseException
 	{
-		synchronized (controller)
+		acquire(readLock);
+		try
 		{
 			return controller.getEntities(type,query);
 		}
+		finally
+		{
+			readLock.unlock();
+		}
+	}
+	
+	@Override
+	public <T extends Readable> Stream<T> streamEntities(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		acquire(readLock);
+		try
+		{
+			return controller.streamEntities(type,query);
+		}
+		finally
+		{
+			readLock.unlock();
+		}
 	}
 	
 	@Override
 	public <T extends Readable> List<Integer> getIds(final Class<T> type) throws RoseException
 	{
-		synchronized (controller)
+		acquire(readLock);
+		try
 		{
 			return controller.getIds(type);
 		}
+		finally
+		{
+			readLock.unlock();
+		}
+	}
+	
+	@Override
+	public <T extends Readable> Map<String, Object[]> getFieldValues(final Class<T> type, final List<String> fieldNames, final Map<String, String> query) throws RoseException
+	{
+		acquire(readLock);
+		try
+		{
+			return controller.getFieldValues(type, fieldNames, query);
+		}
+		finally
+		{
+			readLock.unlock();
+		}
 	}
 	
 	@Override
 	public <T extends Readable> int getEntityCount(final Class<T> type) throws RoseException
 	{
-		synchronized (controller)
+		acquire(readLock);
+		try
 		{
 			return controller.getEntityCount(type);
 		}
+		finally
+		{
+			readLock.unlock();
+		}
 	}
 
 	@Override
 	public <T extends Readable> int getEntityCount(final Class<T> type, final Map<String,String> query) throws RoseException
 	{
-		synchronized (controller)
+		acquire(readLock);
+		try
 		{
 			return controller.getEntityCount(type,query);
 		}
+		finally
+		{
+			readLock.unlock();
+		}
+	}
+	
+	@Override
+	public <T extends Readable> List<Object[]> getAggregates(final Class<T> type, final Map<String, String> query, final List<String> groupBy, final Aggregate... aggregates) throws RoseException
+	{
+		acquire(readLock);
+		try
+		{
+			return controller.getAggregates(type, query, groupBy, aggregates);
+		}
+		finally
+		{
+			readLock.unlock();
+		}
+	}
+	
+	@Override
+	public <T extends Readable> ChangeSet<T> getEntitiesModifiedSince(final Class<T> type, final Date since) throws RoseException
+	{
+		acquire(readLock);
+		try
+		{
+			return controller.getEntitiesModifiedSince(type, since);
+		}
+		finally
+		{
+			readLock.unlock();
+		}
 	}
 	
 	@Override
 	public <T extends Readable> T getEntityById(final Class<T> type, final int id) throws RoseException
 	{
-		synchronized (controller)
+		acquire(readLock);
+		try
 		{
 			return controller.getEntityById(type, id);
 		}
+		finally
+		{
+			readLock.unlock();
+		}
 	}
 	
 	@Override
 	public <T extends Readable> List<T> getEntitiesByIds(final Class<T> type, final List<Integer> ids) throws RoseException
 	{
-		synchronized (controller)
+		acquire(readLock);
+		try
 		{
 			return controller.getEntitiesByIds(type, ids);
 		}
+		finally
+		{
+			readLock.unlock();
+		}
 	}
 	
 	@Override
 	public <T extends Writable> T createNew(final Class<T> type) throws RoseException
 	{
-		synchronized (controller)
+		acquire(writeLock);
+		try
 		{
 			return controller.createNew(type);
 		}
+		finally
+		{
+			writeLock.unlock();
+		}
 	}
 	
 	@Override
 	public <T extends Writable> T createNew(final T entity) throws RoseException
 	{
-		synchronized (controller)
+		acquire(writeLock);
+		try
 		{
 			return controller.createNew(entity);
 		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+	
+	@Override
+	public <T extends Writable> List<T> createAll(final Collection<T> entities) throws RoseException
+	{
+		acquire(writeLock);
+		try
+		{
+			return controller.createAll(entities);
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
 	}
 	
 	@Override
 	public Writable createCopy(final Writable entity) throws RoseException
 	{
-		synchronized (controller)
+		acquire(writeLock);
+		try
 		{
 			return controller.createCopy(entity);
 		}
+		finally
+		{
+			writeLock.unlock();
+		}
 	}
 	
 	@Override
 	public void update(final Writable... entities) throws RoseException
 	{
-		synchronized (controller)
+		acquire(writeLock);
+		try
 		{
 			controller.update(entities);
 		}
+		finally
+		{
+			writeLock.unlock();
+		}
 	}
 	
 	@Override
 	public void delete(final Writable entity) throws RoseException
 	{
-		synchronized (controller)
+		acquire(writeLock);
+		try
 		{
 			controller.delete(entity);
 		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+	
+	@Override
+	public void deleteAll(final Collection<? extends Writable> entities) throws RoseException
+	{
+		acquire(writeLock);
+		try
+		{
+			controller.deleteAll(entities);
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+	
+	@Override
+	public <T extends Writable> int deleteWhere(final Class<T> type, final Map<String, String> query) throws RoseException
+	{
+		acquire(writeLock);
+		try
+		{
+			return controller.deleteWhere(type, query);
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
+	}
+	
+	<T extends Readable> int refresh(final CacheController cacheController, final Class<T> type) throws RoseException
+	{
+		acquire(writeLock);
+		try
+		{
+			return cacheController.refresh(type);
+		}
+		finally
+		{
+			writeLock.unlock();
+		}
 	}
 	
 	@Override
 	public void close() throws RoseException
 	{
-		synchronized (controller)
+		acquire(writeLock);
+		try
 		{
 			controller.close();
 		}
+		finally
+		{
+			writeLock.unlock();
+		}
 	}
 	
 }
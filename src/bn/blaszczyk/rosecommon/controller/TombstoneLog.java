@@ -0,0 +1,78 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import bn.blaszczyk.rose.model.Readable;
+import bn.blaszczyk.rosecommon.tools.TypeManager;
+
+final class TombstoneLog
+{
+	private static final class Tombstone
+	{
+		private final int id;
+		private final long deletedAt;
+
+		private Tombstone(final int id, final long deletedAt)
+		{
+			this.id = id;
+			this.deletedAt = deletedAt;
+		}
+	}
+
+	private final long retention;
+
+	private final Map<Class<? extends Readable>, Deque<Tombstone>> tombstones = new HashMap<>();
+
+	private final Map<Class<? extends Readable>, Long> horizons = new HashMap<>();
+
+	private final long start = System.currentTimeMillis();
+
+	TombstoneLog(final long retention)
+	{
+		this.retention = retention;
+	}
+
+	synchronized void record(final Class<? extends Readable> type, final Collection<Integer> ids)
+	{
+		final long now = System.currentTimeMillis();
+		final Deque<Tombstone> log = tombstones.computeIfAbsent(TypeManager.convertType(type), t -> new ArrayDeque<>());
+		for(final Integer id : ids)
+			log.add(new Tombstone(id, now));
+		prune(TypeManager.convertType(type), now);
+	}
+
+	synchronized boolean covers(final Class<? extends Readable> type, final Date since)
+	{
+		final Class<? extends Readable> entityType = TypeManager.convertType(type);
+		prune(entityType, System.currentTimeMillis());
+		return since.getTime() >= horizons.getOrDefault(entityType, start);
+	}
+
+	synchronized Set<Integer> deletedSince(final Class<? extends Readable> type, final Date since)
+	{
+		final Set<Integer> ids = new LinkedHashSet<>();
+		final Deque<Tombstone> log = tombstones.get(TypeManager.convertType(type));
+		if(log != null)
+			for(final Tombstone tombstone : log)
+				if(tombstone.deletedAt >= since.getTime())
+					ids.add(tombstone.id);
+		return ids;
+	}
+
+	private void prune(final Class<? extends Readable> type, final long now)
+	{
+		final Deque<Tombstone> log = tombstones.get(type);
+		if(log == null)
+			return;
+		while(!log.isEmpty() && log.peekFirst().deletedAt < now - retention)
+			horizons.put(type, log.pollFirst().deletedAt + 1);
+	}
+
+}
@@ -0,0 +1,83 @@
+package bn.blaszczyk.rosecommon.controller;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+final class TrigramIndex
+{
+	private static final int GRAM_LENGTH = 3;
+
+	private final Map<String, Set<Integer>> postings = new HashMap<>();
+	private final Map<Integer, String> values = new HashMap<>();
+
+	synchronized void put(final int id, final Object value)
+	{
+		remove(id);
+		if(value == null)
+			return;
+		final String text = value.toString().toLowerCase();
+		values.put(id, text);
+		for(final String gram : grams(text))
+			postings.computeIfAbsent(gram, g -> new HashSet<>()).add(id);
+	}
+
+	synchronized void remove(final int id)
+	{
+		final String text = values.remove(id);
+		if(text == null)
+			return;
+		for(final String gram : grams(text))
+		{
+			final Set<Integer> ids = postings.get(gram);
+			if(ids == null)
+				continue;
+			ids.remove(id);
+			if(ids.isEmpty())
+				postings.remove(gram);
+		}
+	}
+
+	synchronized Set<Integer> search(final String pattern)
+	{
+		final String text = pattern.toLowerCase();
+		final Set<Integer> candidates;
+		if(text.length() < GRAM_LENGTH)
+			candidates = new HashSet<>(values.keySet());
+		else
+		{
+			final List<Set<Integer>> lists = new ArrayList<>();
+			for(final String gram : grams(text))
+			{
+				final Set<Integer> ids = postings.get(gram);
+				if(ids == null)
+					return new HashSet<>();
+				lists.add(ids);
+			}
+			lists.sort(Comparator.comparingInt(Set::size));
+			candidates = new HashSet<>(lists.get(0));
+			for(int i = 1; i < lists.size() && !candidates.isEmpty(); i++)
+				candidates.retainAll(lists.get(i));
+		}
+		candidates.removeIf(id -> !values.get(id).contains(text));
+		return candidates;
+	}
+
+	synchronized int size()
+	{
+		return values.size();
+	}
+
+	private static Set<String> grams(final String text)
+	{
+		final Set<String> grams = new HashSet<>();
+		for(int i = 0; i + GRAM_LENGTH <= text.length(); i++)
+			grams.add(text.substring(i, i + GRAM_LENGTH));
+		return grams;
+	}
+
+}
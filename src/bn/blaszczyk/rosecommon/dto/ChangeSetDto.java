@@ -0,0 +1,43 @@
+package bn.blaszczyk.rosecommon.dto;
+
+import java.util.List;
+
+import bn.blaszczyk.rose.model.Dto;
+
+public class ChangeSetDto
+{
+
+	private final List<Dto> entities;
+	private final List<Integer> deletedIds;
+	private final long watermark;
+	private final boolean complete;
+
+	public ChangeSetDto(final List<Dto> entities, final List<Integer> deletedIds, final long watermark, final boolean complete)
+	{
+		this.entities = entities;
+		this.deletedIds = deletedIds;
+		this.watermark = watermark;
+		this.complete = complete;
+	}
+
+	public List<Dto> getEntities()
+	{
+		return entities;
+	}
+
+	public List<Integer> getDeletedIds()
+	{
+		return deletedIds;
+	}
+
+	public long getWatermark()
+	{
+		return watermark;
+	}
+
+	public boolean isComplete()
+	{
+		return complete;
+	}
+
+}
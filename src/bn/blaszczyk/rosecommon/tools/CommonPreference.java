@@ -6,6 +6,8 @@ public enum CommonPreference implements Preference {
 	
 	SERVICE_HOST(STRING,"servicehost","localhost",true),
 	SERVICE_PORT(INT,"serviceport",4053,true),
+	SERVICE_CONNECT_TIMEOUT(INT,"serviceconnecttimeout",5000),
+	SERVICE_RECEIVE_TIMEOUT(INT,"servicereceivetimeout",60000),
 
 	DB_HOST(STRING,"dbhost","localhost",true),
 	DB_PORT(STRING,"dbport", "3306",true),
@@ -13,6 +15,29 @@ public enum CommonPreference implements Preference {
 	DB_USER(STRING,"dbuser","root",true),
 	DB_PASSWORD(STRING,"dbpassword","",true),
 	DB_PING_INTERVAL(INT,"dbpinginterval",10000),
+	DB_POOL_SIZE(INT,"dbpoolsize",1),
+	DB_BATCH_SIZE(INT,"dbbatchsize",50),
+	DB_FETCH_SIZE(INT,"dbfetchsize",100),
+	DB_MAX_TRANSACTION_TIME(INT,"dbmaxtransactiontime",60000),
+	DB_REPLICAS(STRING,"dbreplicas","",true),
+	DB_REPLICA_STICKINESS(INT,"dbreplicastickiness",1000),
+	DB_SHARDS(STRING,"dbshards","",true),
+	DB_SHARD_RANGES(STRING,"dbshardranges","",true),
+	DB_SECOND_LEVEL_CACHE(BOOLEAN,"dbsecondlevelcache",false,true),
+	SECOND_LEVEL_CACHE(BOOLEAN,"secondlevelcache",false),
+	SECOND_LEVEL_CACHE_TTL(INT,"secondlevelcachettl",600),
+	SECOND_LEVEL_CACHE_SIZE(INT,"secondlevelcachesize",10000),
+	
+	ASYNC_READ_THREADS(INT,"asyncreadthreads",8),
+	ASYNC_WRITE_THREADS(INT,"asyncwritethreads",1),
+	ASYNC_QUEUE_SIZE(INT,"asyncqueuesize",1000),
+	
+	SEARCH_INDEX_FIELDS(STRING,"searchindexfields",""),
+	SEARCH_INDEX_EXCLUSIVE(BOOLEAN,"searchindexexclusive",false),
+	QUERY_CACHE_SIZE(INT,"querycachesize",1000),
+	QUERY_CACHE_TTL(INT,"querycachettl",60),
+	TOMBSTONE_RETENTION(INT,"tombstoneretention",86400),
+	METRICS_SLOW_THRESHOLD(INT,"metricsslowthreshold",500),
 	
 	BASE_DIRECTORY(STRING,"basefolder","C:/temp"),
 	LOG_LEVEL(STRING,"loglevel","INFO"),
@@ -3,6 +3,9 @@ package bn.blaszczyk.rosecommon.tools;
 import java.math.BigDecimal;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import bn.blaszczyk.rose.RoseException;
@@ -34,15 +37,19 @@ public final class EntityUtils
 				switch(pField.getType())
 				{
 				case DATE:
-					return new Date((long)dtoValue);
+					return new Date(((Number)dtoValue).longValue());
 				case NUMERIC:
-					final BigDecimal numValue = new BigDecimal((String)dtoValue);
+					final BigDecimal numValue = new BigDecimal(dtoValue.toString());
 					checkNumeric(numValue,pField);
 					return numValue;
 				case CHAR:
 				case VARCHAR:
 					checkString((String)dtoValue,pField);
+					return dtoValue;
 				case INT:
+					if(dtoValue instanceof Number)
+						return ((Number)dtoValue).intValue();
+					return dtoValue;
 				case BOOLEAN:
 					return dtoValue;
 				}
@@ -141,6 +148,33 @@ public final class EntityUtils
 		return dto;
 	}
 	
+	public static Object getFieldValue(final Readable entity, final String fieldName) throws RoseException
+	{
+		if(fieldName.equals("id"))
+			return entity.getId();
+		for(int i = 0; i < entity.getFieldCount(); i++)
+			if(entity.getFieldName(i).equals(fieldName))
+				return entity.getFieldValue(i);
+		for(int i = 0; i < entity.getEntityCount(); i++)
+			if(entity.getEntityName(i).equals(fieldName) && !entity.getRelationType(i).isSecondMany())
+			{
+				final Readable value = entity.getEntityValueOne(i);
+				return value == null ? null : value.getId();
+			}
+		throw new RoseException("unknown field " + fieldName + " for " + entity.getEntityName());
+	}
+	
+	public static Map<String, Object[]> toFieldValues(final List<? extends Readable> entities, final List<String> fieldNames) throws RoseException
+	{
+		final Map<String, Object[]> fieldValues = new LinkedHashMap<>();
+		for(final String fieldName : fieldNames)
+			fieldValues.put(fieldName, new Object[entities.size()]);
+		for(int row = 0; row < entities.size(); row++)
+			for(final String fieldName : fieldNames)
+				fieldValues.get(fieldName)[row] = getFieldValue(entities.get(row), fieldName);
+		return fieldValues;
+	}
+	
 	public static String toStringSimple(Identifyable entity)
 	{
 		return String.format("%s id=%d", entity.getClass().getSimpleName(), entity.getId());